@@ -0,0 +1,118 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The {@code BatchRunner} class processes a directory of command files, such as the daily files of many branches,
+ * several at a time in one JVM. Every file is an independent input: it is run by a {@link VoyageManager} of its own,
+ * exactly as {@code BookingSystem} runs a single input file, and its output goes to a file of the same name in the
+ * output directory, so no file sees the voyages or the output of another.
+ *
+ * <p>Files are run on a fixed pool of threads, so at most that many files are read and held in memory at once,
+ * however many the directory has. All managers record their commands in the same metrics. A file that fails does
+ * not stop the others; once every file is done, the first failure in file name order is thrown.
+ */
+public class BatchRunner {
+    private final int threads;
+    private final int workers;
+    private final CommandMetrics metrics;
+    private final Path journalDirectory;
+
+    /**
+     * Constructs a {@code BatchRunner}.
+     *
+     * @param threads          the number of files run at once
+     * @param workers          the number of threads each file's commands run on, sharded by voyage when more than one
+     * @param metrics          the metrics every file's commands are recorded in
+     * @param journalDirectory the directory under which each file is journaled, in a subdirectory named after the
+     *                         file, or {@code null} to run without journals
+     */
+    public BatchRunner(int threads, int workers, CommandMetrics metrics, Path journalDirectory) {
+        this.threads = Math.max(1, threads);
+        this.workers = workers;
+        this.metrics = metrics;
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Runs every regular file of the input directory and writes its output to the output directory, which is created
+     * if it does not exist.
+     *
+     * @param inputDirectory  the directory of command files
+     * @param outputDirectory the directory the output files are written to
+     * @return the number of files run
+     * @throws IOException if the directories cannot be read or created, or a file cannot be read or written
+     * @throws RuntimeException the first exception thrown by a command, in file name order
+     */
+    public int run(Path inputDirectory, Path outputDirectory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(inputDirectory)) {
+            files = entries.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        Files.createDirectories(outputDirectory);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "booking-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(files.size());
+            for (Path file : files) {
+                futures.add(executor.submit(() -> {
+                    runFile(file, outputDirectory.resolve(file.getFileName()));
+                    return null;
+                }));
+            }
+
+            Throwable failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while running files", e);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure instanceof IOException) throw (IOException) failure;
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            return files.size();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs one command file into its output file. The output file is closed, and the journal if any, even if a
+     * command fails.
+     */
+    private void runFile(Path file, Path outputFile) throws IOException {
+        String[] input = FileInput.readFile(file.toString(), true, true);
+        try (OutputSink output = new OutputSink(outputFile.toString())) {
+            VoyageManager manager = new VoyageManager(output, metrics);
+            if (journalDirectory != null) {
+                manager.openJournal(journalDirectory.resolve(file.getFileName()));
+            }
+            try {
+                BookingSystem.run(manager, input, workers);
+            } finally {
+                manager.closeJournal();
+            }
+        }
+    }
+}
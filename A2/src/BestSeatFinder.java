@@ -0,0 +1,133 @@
+import java.util.BitSet;
+
+/**
+ * The {@code BestSeatFinder} class finds the best block of free seats for a party of a given size, working on the
+ * sold-seat bitmap of a voyage 64 seats at a time instead of looking at {@code Seat} objects.
+ *
+ * <p>A row is described by the sizes of its seat blocks from the window to the aisle and on, as shown by
+ * {@link Voyage#printDetails()}: 2+2 for a standard bus, 1+2 for a premium bus and a single block of 2 for a minibus.
+ * The party is seated in the frontmost row that has the seats side by side within one block; failing that, in the
+ * frontmost row that has them consecutively across the aisle. A party larger than a row gets the first run of
+ * consecutive free seat numbers, which spans neighbouring rows.
+ *
+ * <p>Rows are scanned a word at a time: the free bits of all rows in a 64-bit window are shifted and ANDed together so
+ * that a bit survives only where a whole run of free seats starts, and a mask keeps the starts allowed by the layout.
+ */
+public class BestSeatFinder {
+
+    private BestSeatFinder() {
+    }
+
+    /**
+     * Finds the best run of free seats.
+     *
+     * @param sold   the sold seats, where bit n - 1 is set when seat number n is sold
+     * @param rows   the number of rows
+     * @param blocks the sizes of the seat blocks in a row
+     * @param count  the number of seats wanted
+     * @return the seat number of the first seat of the run, or -1 if there is no such run
+     */
+    public static int find(BitSet sold, int rows, int[] blocks, int count) {
+        int width = 0;
+        int widestBlock = 0;
+        for (int block : blocks) {
+            width += block;
+            widestBlock = Math.max(widestBlock, block);
+        }
+        if (count <= 0 || width == 0 || rows <= 0) return -1;
+
+        if (count > width) {
+            return findRun(sold, rows * width, count);
+        }
+
+        long[] words = sold.toLongArray();
+        // Side by side within a block
+        if (count <= widestBlock) {
+            int start = findInRows(words, rows, width, blockStarts(blocks, count), count);
+            if (start >= 0) return start + 1;
+        }
+        // Consecutive in the same row, across the aisle
+        int start = findInRows(words, rows, width, rowStarts(width, count), count);
+        return start >= 0 ? start + 1 : -1;
+    }
+
+    /**
+     * Finds the first row with a run of free seats starting at one of the allowed offsets.
+     *
+     * @param starts the bits of the offsets within a row where a run may start
+     * @return the index of the first seat of the run, or -1 if there is none
+     */
+    private static int findInRows(long[] words, int rows, int width, long starts, int count) {
+        if (starts == 0) return -1;
+        int rowsPerWindow = 64 / width;
+        long pattern = 0;
+        for (int r = 0; r < rowsPerWindow; r++) {
+            pattern |= starts << (r * width);
+        }
+
+        for (int row = 0; row < rows; row += rowsPerWindow) {
+            int from = row * width;
+            int bits = Math.min(rowsPerWindow, rows - row) * width;
+            long valid = bits == 64 ? -1L : (1L << bits) - 1;
+            long free = ~bitsAt(words, from) & valid;
+            long hits = pattern & free;
+            for (int k = 1; k < count && hits != 0; k++) {
+                hits &= free >>> k;
+            }
+            if (hits != 0) return from + Long.numberOfTrailingZeros(hits);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the first run of consecutive free seats among the first {@code seatCount} seats.
+     *
+     * @return the seat number of the first seat of the run, or -1 if there is none
+     */
+    private static int findRun(BitSet sold, int seatCount, int count) {
+        int start = sold.nextClearBit(0);
+        while (start + count <= seatCount) {
+            int end = sold.nextSetBit(start);
+            if (end < 0 || end >= start + count) return start + 1;
+            start = sold.nextClearBit(end);
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the offsets within a row where a run of the given length fits inside one block.
+     */
+    private static long blockStarts(int[] blocks, int count) {
+        long starts = 0;
+        int offset = 0;
+        for (int block : blocks) {
+            for (int s = offset; s + count <= offset + block; s++) {
+                starts |= 1L << s;
+            }
+            offset += block;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the offsets within a row where a run of the given length fits inside the row.
+     */
+    private static long rowStarts(int width, int count) {
+        long starts = 0;
+        for (int s = 0; s + count <= width; s++) {
+            starts |= 1L << s;
+        }
+        return starts;
+    }
+
+    /**
+     * Returns the 64 bits of the bitmap starting at the given bit index; bits past the end are zero.
+     */
+    private static long bitsAt(long[] words, int from) {
+        int word = from >>> 6;
+        int shift = from & 63;
+        long low = word < words.length ? words[word] >>> shift : 0;
+        long high = shift != 0 && word + 1 < words.length ? words[word + 1] << (64 - shift) : 0;
+        return low | high;
+    }
+}
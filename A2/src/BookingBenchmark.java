@@ -0,0 +1,133 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * The {@code BookingBenchmark} class drives {@code VoyageManager} with commands from a {@link LoadGenerator} and
+ * reports the throughput, the memory allocated per command and the latency percentiles of every command type.
+ *
+ * <p>Commands are generated before they run, so only command processing is measured; their output is kept in memory
+ * and discarded, as a benchmark of the file output would mostly measure the disk. A warm-up run on a separate range
+ * of voyage IDs comes first, so the measured run sees compiled code. Allocation is read from the JVM's per-thread
+ * allocation counter where the runtime has one.
+ *
+ * <p>Usage: {@code java BookingBenchmark [commands] [key=value options]}, where the options are those of
+ * {@link LoadGenerator#LoadGenerator(String[])}.
+ */
+public class BookingBenchmark {
+    private static final String[] COMMAND_TYPES = {
+            "INIT_VOYAGE", "SELL_TICKET", "REFUND_TICKET", "PRINT_VOYAGE", "CANCEL_VOYAGE", "Z_REPORT"};
+    private static final int WARM_UP_FIRST_ID = 1_000_000_000;
+
+    /**
+     * Runs the benchmark and prints its report.
+     *
+     * @param args The optional command count, 1000000 by default, followed by generator options.
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] options = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[0];
+
+        // Warm up on voyages of their own, which are cancelled before the measured run
+        String[] warmUp = new LoadGenerator(withOption(options, "firstId=" + WARM_UP_FIRST_ID))
+                .next(Math.min(count, 200_000));
+        VoyageManager manager = new VoyageManager();
+        run(manager, warmUp, false);
+        StringBuilder out = new StringBuilder();
+        for (String command : warmUp) {
+            if (command.startsWith("INIT_VOYAGE\t")) {
+                manager.process("CANCEL_VOYAGE\t" + command.split("\t")[2], out);
+                out.setLength(0);
+            }
+        }
+
+        run(manager, new LoadGenerator(options).next(count), true);
+    }
+
+    /**
+     * Runs commands through {@link VoyageManager#process(String, StringBuilder)} and optionally prints the report.
+     */
+    private static void run(VoyageManager manager, String[] commands, boolean report) {
+        long[][] latencies = new long[COMMAND_TYPES.length + 1][];
+        int[] counts = new int[latencies.length];
+        for (int t = 0; t < latencies.length; t++) {
+            latencies[t] = new long[1024];
+        }
+        int[] types = new int[commands.length];
+        for (int i = 0; i < commands.length; i++) {
+            types[i] = typeOf(commands[i]);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        StringBuilder out = new StringBuilder();
+        long start = System.nanoTime();
+        for (int i = 0; i < commands.length; i++) {
+            out.setLength(0);
+            long commandStart = System.nanoTime();
+            manager.process(commands[i], out);
+            long latency = System.nanoTime() - commandStart;
+
+            int type = types[i];
+            if (counts[type] == latencies[type].length) {
+                latencies[type] = Arrays.copyOf(latencies[type], 2 * counts[type]);
+            }
+            latencies[type][counts[type]++] = latency;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes(threads);
+        if (!report) return;
+
+        System.out.printf("%d commands in %.2f s: %.0f commands/s%n",
+                commands.length, elapsed / 1e9, commands.length / (elapsed / 1e9));
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            // Includes the latency buffers as they grow, which is a few bytes per command at most
+            System.out.printf("Allocated: %.1f bytes/command%n",
+                    (double) (allocatedAfter - allocatedBefore) / commands.length);
+        } else {
+            System.out.println("Allocated: not measurable on this runtime");
+        }
+        System.out.printf("%-14s %10s %10s %10s %10s %10s%n", "Command", "Count", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (int t = 0; t < latencies.length; t++) {
+            if (counts[t] == 0) continue;
+            long[] sorted = Arrays.copyOf(latencies[t], counts[t]);
+            Arrays.sort(sorted);
+            System.out.printf("%-14s %10d %10.2f %10.2f %10.2f %10.2f%n",
+                    t < COMMAND_TYPES.length ? COMMAND_TYPES[t] : "other", counts[t],
+                    percentile(sorted, 0.50) / 1e3, percentile(sorted, 0.99) / 1e3,
+                    percentile(sorted, 0.999) / 1e3, sorted[sorted.length - 1] / 1e3);
+        }
+    }
+
+    /**
+     * Returns the options with one more appended, which takes precedence over an earlier one with the same key.
+     */
+    private static String[] withOption(String[] options, String option) {
+        String[] all = Arrays.copyOf(options, options.length + 1);
+        all[options.length] = option;
+        return all;
+    }
+
+    private static int typeOf(String command) {
+        int tab = command.indexOf('\t');
+        String type = tab < 0 ? command : command.substring(0, tab);
+        for (int t = 0; t < COMMAND_TYPES.length; t++) {
+            if (COMMAND_TYPES[t].equals(type)) return t;
+        }
+        return COMMAND_TYPES.length;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread, or -1 if the runtime cannot tell.
+     */
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,811 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code BookingJournal} class makes the voyage registry durable with a write-ahead journal and periodic snapshots.
+ *
+ * <p>Every successful INIT_VOYAGE, SELL_TICKET, REFUND_TICKET, CANCEL_VOYAGE, ADD_STOPS, SELL_SEGMENT and
+ * REFUND_SEGMENT is appended to an in-memory buffer as
+ * a binary record while the voyage's lock is held, so logging costs a buffer copy rather than a disk write.
+ * A background thread writes the buffer to the current journal segment and forces it to disk every few milliseconds,
+ * committing all records that arrived in that window with a single fsync (group commit). A command is therefore durable
+ * at most one commit interval after it returns; {@link #sync()} waits until everything logged so far is on disk.
+ * If the thread fails to write, the journal stops accepting records: logging a record, and
+ * {@link #checkWritable()}, throw from then on, so commands fail instead of reporting changes that are not durable.
+ *
+ * <p>After a number of records the thread starts a new journal segment and writes a snapshot of all voyages next to it.
+ * The snapshot is fuzzy: voyages are captured one at a time under their own locks while commands keep running, and
+ * each voyage remembers the sequence number of the last record applied to it. Recovery loads the newest snapshot and
+ * replays the segments from that snapshot on, skipping records a voyage already reflects. Older segments and snapshots
+ * are deleted once a newer snapshot is on disk.
+ *
+ * <p>Files in the journal directory are {@code journal-<n>.log} and {@code snapshot-<n>.bin}, where snapshot n holds the
+ * state before the first record of segment n. A record is an int body length, the body and a CRC-32 of the body; a torn record at the end of the last segment is ignored on recovery, and any other damaged record fails it.
+ *
+ * <p>Seat holds are not journaled, as they only last minutes: a restart releases them, and a confirmed hold is
+ * journaled as a sale.
+ */
+public class BookingJournal implements Closeable {
+    private static final int SNAPSHOT_MAGIC = 0x534E4150; // "SNAP"
+    private static final int SNAPSHOT_VERSION = 2; // Version 2 added the stops and segment sales of every voyage
+    private static final byte INIT = 1;
+    private static final byte SELL = 2;
+    private static final byte REFUND = 3;
+    private static final byte CANCEL = 4;
+    private static final byte STOPS = 5;
+    private static final byte SEGMENT_SELL = 6;
+    private static final byte SEGMENT_REFUND = 7;
+    private static final byte STANDARD = 0;
+    private static final byte PREMIUM = 1;
+    private static final byte MINIBUS = 2;
+    private static final int HEADER_BYTES = 13; // Sequence number, type and voyage ID
+    private static final int INIT_FIELD_BYTES = 33; // Fixed-size fields written by putInitFields
+    private static final int WAKE_UP_BYTES = 1 << 20; // Wake the commit thread early once this much is buffered
+
+    private final Path directory;
+    private final Map<Integer, Voyage> voyages;
+    private final long commitIntervalMillis;
+    private final long snapshotInterval;
+    private final CRC32 crc = new CRC32(); // Checksums records as they are logged; guarded by this
+    private final Thread committer;
+
+    // Guarded by this
+    private ByteBuffer pending = newBuffer(1 << 16);
+    private ByteBuffer spare = newBuffer(1 << 16);
+    private long nextSequence;
+    private int recordStart; // Position in the pending buffer of the record being written
+    private long committedSequence;
+    private long snapshotSequence; // Last sequence number reflected by the newest snapshot
+    private boolean syncRequested;
+    private boolean closed;
+    private volatile IOException failure; // Set once the commit thread stops on an error; read without the lock too
+
+    // Only used by the commit thread after construction
+    private FileChannel segment;
+    private long segmentNumber;
+
+    /**
+     * Constructs a {@code BookingJournal}; use {@link #open} to create one.
+     */
+    private BookingJournal(Path directory, Map<Integer, Voyage> voyages, long commitIntervalMillis, long snapshotInterval) {
+        this.directory = directory;
+        this.voyages = voyages;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.snapshotInterval = snapshotInterval;
+        this.committer = new Thread(this::commitLoop, "booking-journal");
+        this.committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the journal in a directory with a 2 ms commit interval and a snapshot every 100000 records.
+     *
+     * @param directory the journal directory, created if it does not exist
+     * @param voyages   the voyage registry, which is filled with the recovered voyages
+     * @return the open journal
+     * @throws IOException if the journal cannot be read or written
+     * @see #open(Path, Map, long, long)
+     */
+    public static BookingJournal open(Path directory, Map<Integer, Voyage> voyages) throws IOException {
+        return open(directory, voyages, 2, 100_000);
+    }
+
+    /**
+     * Opens the journal in a directory. The state stored in the directory is recovered into the registry, which
+     * should be empty, and a new journal segment is started.
+     *
+     * @param directory            the journal directory, created if it does not exist
+     * @param voyages              the voyage registry, which is filled with the recovered voyages
+     * @param commitIntervalMillis the longest time a record waits before it is forced to disk
+     * @param snapshotInterval     the number of records between snapshots
+     * @return the open journal
+     * @throws IOException if the journal cannot be read or written
+     */
+    public static BookingJournal open(Path directory, Map<Integer, Voyage> voyages, long commitIntervalMillis,
+                                      long snapshotInterval) throws IOException {
+        Files.createDirectories(directory);
+        BookingJournal journal = new BookingJournal(directory, voyages, Math.max(1, commitIntervalMillis),
+                Math.max(1, snapshotInterval));
+        journal.recover();
+        journal.committer.start();
+        return journal;
+    }
+
+    /**
+     * Logs the initialization of a voyage. Must be called while holding the voyage's lock.
+     *
+     * @param voyage the new voyage
+     */
+    public void logInit(Voyage voyage) {
+        byte[] from = voyage.getFrom().getBytes(StandardCharsets.UTF_8);
+        byte[] to = voyage.getTo().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            end(voyage, putInitFields(begin(voyage, INIT, INIT_FIELD_BYTES + from.length + to.length), voyage, from, to));
+        }
+    }
+
+    /**
+     * Logs a successful ticket sale. Must be called while holding the voyage's lock.
+     *
+     * @param voyage      the voyage
+     * @param seatNumbers the sold seat numbers
+     */
+    public void logSell(Voyage voyage, List<Integer> seatNumbers) {
+        logSeats(voyage, SELL, toArray(seatNumbers), seatNumbers.size());
+    }
+
+    /**
+     * Logs a successful ticket sale of the seats in a buffer. Must be called while holding the voyage's lock.
+     *
+     * @param voyage      the voyage
+     * @param seatNumbers the buffer holding the sold seat numbers
+     * @param count       the number of seat numbers in the buffer
+     */
+    public void logSell(Voyage voyage, int[] seatNumbers, int count) {
+        logSeats(voyage, SELL, seatNumbers, count);
+    }
+
+    /**
+     * Logs a successful refund. Must be called while holding the voyage's lock.
+     *
+     * @param voyage      the voyage
+     * @param seatNumbers the refunded seat numbers
+     */
+    public void logRefund(Voyage voyage, List<Integer> seatNumbers) {
+        logSeats(voyage, REFUND, toArray(seatNumbers), seatNumbers.size());
+    }
+
+    /**
+     * Logs a successful refund of the seats in a buffer. Must be called while holding the voyage's lock.
+     *
+     * @param voyage      the voyage
+     * @param seatNumbers the buffer holding the refunded seat numbers
+     * @param count       the number of seat numbers in the buffer
+     */
+    public void logRefund(Voyage voyage, int[] seatNumbers, int count) {
+        logSeats(voyage, REFUND, seatNumbers, count);
+    }
+
+    /**
+     * Logs the cancellation of a voyage. Must be called while holding the voyage's lock.
+     *
+     * @param voyage the cancelled voyage
+     */
+    public synchronized void logCancel(Voyage voyage) {
+        end(voyage, begin(voyage, CANCEL, 0));
+    }
+
+    /**
+     * Logs the stops added to a voyage. Must be called while holding the voyage's lock.
+     *
+     * @param voyage the voyage
+     * @param stops  the added stops
+     */
+    public void logStops(Voyage voyage, String[] stops) {
+        byte[][] names = new byte[stops.length][];
+        int bytes = 4;
+        for (int i = 0; i < stops.length; i++) {
+            names[i] = stops[i].getBytes(StandardCharsets.UTF_8);
+            bytes += 4 + names[i].length;
+        }
+        synchronized (this) {
+            ByteBuffer body = begin(voyage, STOPS, bytes);
+            body.putInt(names.length);
+            for (byte[] name : names) {
+                body.putInt(name.length).put(name);
+            }
+            end(voyage, body);
+        }
+    }
+
+    /**
+     * Logs a successful sale of the seats in a buffer between two stops. Must be called while holding the voyage's
+     * lock.
+     *
+     * @param voyage      the voyage
+     * @param origin      the index of the origin stop
+     * @param destination the index of the destination stop
+     * @param seatNumbers the buffer holding the sold seat numbers
+     * @param count       the number of seat numbers in the buffer
+     */
+    public void logSegmentSell(Voyage voyage, int origin, int destination, int[] seatNumbers, int count) {
+        logSegment(voyage, SEGMENT_SELL, origin, destination, seatNumbers, count);
+    }
+
+    /**
+     * Logs a successful refund of the seats in a buffer between two stops. Must be called while holding the voyage's
+     * lock.
+     *
+     * @param voyage      the voyage
+     * @param origin      the index of the origin stop
+     * @param destination the index of the destination stop
+     * @param seatNumbers the buffer holding the refunded seat numbers
+     * @param count       the number of seat numbers in the buffer
+     */
+    public void logSegmentRefund(Voyage voyage, int origin, int destination, int[] seatNumbers, int count) {
+        logSegment(voyage, SEGMENT_REFUND, origin, destination, seatNumbers, count);
+    }
+
+    private synchronized void logSegment(Voyage voyage, byte type, int origin, int destination, int[] seatNumbers,
+                                         int count) {
+        ByteBuffer body = begin(voyage, type, 12 + 4 * count);
+        body.putInt(origin).putInt(destination).putInt(count);
+        for (int i = 0; i < count; i++) {
+            body.putInt(seatNumbers[i]);
+        }
+        end(voyage, body);
+    }
+
+    private synchronized void logSeats(Voyage voyage, byte type, int[] seatNumbers, int count) {
+        ByteBuffer body = begin(voyage, type, 4 + 4 * count);
+        body.putInt(count);
+        for (int i = 0; i < count; i++) {
+            body.putInt(seatNumbers[i]);
+        }
+        end(voyage, body);
+    }
+
+    private static int[] toArray(List<Integer> seatNumbers) {
+        int[] seatArray = new int[seatNumbers.size()];
+        for (int i = 0; i < seatArray.length; i++) {
+            seatArray[i] = seatNumbers.get(i);
+        }
+        return seatArray;
+    }
+
+    /**
+     * Throws if the journal no longer accepts records because writing it failed, so a command can be refused before
+     * it changes anything.
+     *
+     * @throws UncheckedIOException if the journal could not be written
+     */
+    public void checkWritable() {
+        IOException current = failure;
+        if (current != null) throw new UncheckedIOException("The journal cannot be written", current);
+    }
+
+    /**
+     * Reserves room for a record and writes its common fields: sequence number, type and voyage ID. Fails once the
+     * journal cannot be written, so records no longer pile up in memory.
+     */
+    private ByteBuffer begin(Voyage voyage, byte type, int payloadBytes) {
+        checkWritable();
+        int recordBytes = 4 + HEADER_BYTES + payloadBytes + 4;
+        if (pending.remaining() < recordBytes) {
+            ByteBuffer grown = newBuffer(Math.max(2 * pending.capacity(), pending.position() + recordBytes));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        recordStart = pending.position();
+        pending.putInt(HEADER_BYTES + payloadBytes);
+        pending.putLong(nextSequence).put(type).putInt(voyage.getId());
+        return pending;
+    }
+
+    /**
+     * Finishes the record being written with its checksum and records its sequence number on the voyage.
+     */
+    private void end(Voyage voyage, ByteBuffer body) {
+        crc.reset();
+        crc.update(body.array(), body.arrayOffset() + recordStart + 4, body.position() - recordStart - 4);
+        body.putInt((int) crc.getValue());
+        voyage.journalSequence = nextSequence++;
+        if (pending.position() >= WAKE_UP_BYTES) notifyAll();
+    }
+
+    /**
+     * Blocks until every record logged before the call is on disk.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    public synchronized void sync() throws IOException {
+        long target = nextSequence - 1;
+        while (committedSequence < target && failure == null && !closed) {
+            syncRequested = true;
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the journal", e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Forces every logged record to disk and closes the journal.
+     *
+     * @throws IOException if the journal could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the journal", e);
+        }
+        synchronized (this) {
+            if (failure != null) throw failure;
+        }
+    }
+
+    /**
+     * The commit thread: writes and forces the buffered records once per interval or when asked to,
+     * and starts a new segment with a snapshot every {@link #snapshotInterval} records.
+     */
+    private void commitLoop() {
+        try {
+            while (true) {
+                ByteBuffer batch;
+                long batchEnd;
+                boolean last;
+                synchronized (this) {
+                    long deadline = System.currentTimeMillis() + commitIntervalMillis;
+                    long now;
+                    while (!closed && !syncRequested && pending.position() < WAKE_UP_BYTES
+                            && (now = System.currentTimeMillis()) < deadline) {
+                        wait(deadline - now);
+                    }
+                    syncRequested = false;
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    batchEnd = nextSequence - 1;
+                    last = closed;
+                }
+
+                if (batch.position() > 0) {
+                    batch.flip();
+                    while (batch.hasRemaining()) {
+                        segment.write(batch);
+                    }
+                    segment.force(false);
+                }
+                batch.clear();
+
+                synchronized (this) {
+                    committedSequence = batchEnd;
+                    notifyAll();
+                }
+                if (last) break;
+                if (batchEnd - snapshotSequence >= snapshotInterval) {
+                    snapshot();
+                }
+            }
+            segment.close();
+        } catch (IOException e) {
+            fail(e);
+        } catch (InterruptedException e) {
+            fail(new IOException("The journal commit thread was interrupted", e));
+        } catch (RuntimeException e) {
+            fail(new IOException("The journal commit thread failed", e));
+        }
+    }
+
+    /**
+     * Records why the commit thread stopped and wakes every waiting thread, so no one waits for a commit that will
+     * never come.
+     */
+    private synchronized void fail(IOException e) {
+        failure = e;
+        notifyAll();
+    }
+
+    /**
+     * Starts a new segment and writes a snapshot holding the state before its first record. Runs on the commit thread.
+     */
+    private void snapshot() throws IOException {
+        long start;
+        ByteBuffer batch;
+        synchronized (this) {
+            // Records logged from here on go to the new segment
+            start = nextSequence - 1;
+            batch = pending;
+            pending = spare;
+            spare = batch;
+        }
+        batch.flip();
+        while (batch.hasRemaining()) {
+            segment.write(batch);
+        }
+        batch.clear();
+        segment.force(false);
+        segment.close();
+        synchronized (this) {
+            committedSequence = Math.max(committedSequence, start);
+            notifyAll();
+        }
+        long number = segmentNumber + 1;
+        openSegment(number);
+
+        ByteBuffer snapshot = newBuffer(1 << 16);
+        snapshot.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(start).putInt(0);
+        int count = 0;
+        for (Voyage voyage : new ArrayList<>(voyages.values())) {
+            synchronized (voyage) {
+                if (voyage.isCancelled()) continue;
+                snapshot = writeVoyage(snapshot, voyage);
+                count++;
+            }
+        }
+        snapshot.putInt(16, count);
+        CRC32 crc = new CRC32(); // Commands keep logging meanwhile, with the journal's own checksum
+        ByteBuffer view = snapshot.duplicate();
+        view.flip();
+        crc.update(view);
+        snapshot.putInt((int) crc.getValue());
+        snapshot.flip();
+
+        Path temporary = directory.resolve("snapshot-" + number + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, snapshotPath(number), StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            snapshotSequence = start;
+        }
+
+        // Everything before the new snapshot is no longer needed
+        for (long old : listFiles("journal-", ".log").keySet()) {
+            if (old < number) Files.deleteIfExists(journalPath(old));
+        }
+        for (long old : listFiles("snapshot-", ".bin").keySet()) {
+            if (old < number) Files.deleteIfExists(snapshotPath(old));
+        }
+    }
+
+    /**
+     * Appends one voyage to a snapshot buffer, growing the buffer if needed.
+     */
+    private static ByteBuffer writeVoyage(ByteBuffer snapshot, Voyage voyage) {
+        byte[] from = voyage.getFrom().getBytes(StandardCharsets.UTF_8);
+        byte[] to = voyage.getTo().getBytes(StandardCharsets.UTF_8);
+        long[] sold = voyage.getSoldSeats().toLongArray();
+        String[] stops = voyage.getStops();
+        long[] soldSegments = voyage.getSoldSegments();
+        byte[][] names = new byte[stops == null ? 0 : stops.length][];
+        int bytes = HEADER_BYTES + INIT_FIELD_BYTES + from.length + to.length + 12 + 8 * sold.length + 4;
+        if (stops != null) {
+            for (int i = 0; i < stops.length; i++) {
+                names[i] = stops[i].getBytes(StandardCharsets.UTF_8);
+                bytes += 4 + names[i].length;
+            }
+            bytes += 12 + 8 * soldSegments.length;
+        }
+        if (snapshot.remaining() < bytes) {
+            ByteBuffer grown = newBuffer(Math.max(2 * snapshot.capacity(), snapshot.position() + bytes));
+            snapshot.flip();
+            grown.put(snapshot);
+            snapshot = grown;
+        }
+        snapshot.putInt(voyage.getId()).putLong(voyage.journalSequence);
+        putInitFields(snapshot, voyage, from, to);
+        snapshot.putDouble(voyage.getTotalCut()).putInt(sold.length);
+        for (long word : sold) {
+            snapshot.putLong(word);
+        }
+
+        // Stops and segment sales, or -1 for a voyage that never had either
+        if (stops == null) return snapshot.putInt(-1);
+        snapshot.putInt(names.length);
+        for (byte[] name : names) {
+            snapshot.putInt(name.length).put(name);
+        }
+        snapshot.putDouble(voyage.getSegmentRevenue()).putInt(soldSegments.length);
+        for (long segments : soldSegments) {
+            snapshot.putLong(segments);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Loads the newest snapshot, replays the journal segments after it and opens a new segment.
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> snapshots = listFiles("snapshot-", ".bin");
+        TreeMap<Long, Path> segments = listFiles("journal-", ".log");
+        long first = 0;
+        long start = 0;
+        if (!snapshots.isEmpty()) {
+            first = snapshots.lastKey();
+            start = readSnapshot(snapshots.lastEntry().getValue());
+        }
+
+        long last = start;
+        for (Map.Entry<Long, Path> entry : segments.tailMap(first, true).entrySet()) {
+            last = Math.max(last, replay(entry.getValue(), start, entry.getKey().equals(segments.lastKey())));
+        }
+        nextSequence = last + 1;
+        committedSequence = last;
+        snapshotSequence = start;
+        openSegment(segments.isEmpty() ? Math.max(1, first) : Math.max(first, segments.lastKey() + 1));
+    }
+
+    /**
+     * Loads a snapshot into the registry.
+     *
+     * @return the last sequence number the snapshot reflects
+     */
+    private long readSnapshot(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(Math.max(0, buffer.limit() - 4));
+        crc.update(view);
+        if (buffer.limit() < 24 || buffer.getInt(buffer.limit() - 4) != (int) crc.getValue()
+                || buffer.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Corrupt snapshot: " + path);
+        }
+        int version = buffer.getInt();
+        if (version < 1 || version > SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+        long start = buffer.getLong();
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            int id = buffer.getInt();
+            long sequence = buffer.getLong();
+            Voyage voyage = create(buffer, id);
+            double totalCut = buffer.getDouble();
+            long[] sold = new long[buffer.getInt()];
+            for (int w = 0; w < sold.length; w++) {
+                sold[w] = buffer.getLong();
+            }
+            voyage.restore(BitSet.valueOf(sold), totalCut);
+            if (version >= 2) {
+                readSegments(buffer, voyage);
+            }
+            voyage.journalSequence = sequence;
+            voyages.put(id, voyage);
+        }
+        return start;
+    }
+
+    /**
+     * Replays the records of a segment that the registry does not reflect yet. Only the last segment can end with a
+     * record torn by a crash, which is cut off; any other damaged record fails recovery, as replaying the records
+     * after it would apply them to incomplete state.
+     *
+     * @param lastSegment whether this is the last segment, which was being written when the journal stopped
+     * @return the largest sequence number in the segment, or {@code start} if it has none
+     * @throws IOException if the segment cannot be read or holds a damaged record before its tail
+     */
+    private long replay(Path path, long start, boolean lastSegment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        CRC32 crc = new CRC32();
+        long last = start;
+        while (buffer.hasRemaining()) {
+            int recordStart = buffer.position();
+            int length = buffer.remaining() >= 4 ? buffer.getInt() : Integer.MAX_VALUE; // A torn length runs past the end
+            boolean intact = length >= HEADER_BYTES && buffer.remaining() >= length + 4;
+            ByteBuffer body = null;
+            if (intact) {
+                crc.reset();
+                body = buffer.slice();
+                body.limit(length);
+                crc.update(body.duplicate());
+                buffer.position(buffer.position() + length);
+                intact = buffer.getInt() == (int) crc.getValue();
+            }
+            if (!intact) {
+                if (lastSegment && isTornTail(buffer, recordStart, length)) {
+                    // Cut the torn tail off, so the segment ends cleanly once newer segments follow it
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(recordStart);
+                        channel.force(true);
+                    }
+                    break;
+                }
+                throw new IOException("Corrupt journal record at offset " + recordStart + ": " + path);
+            }
+
+            long sequence = body.getLong();
+            byte type = body.get();
+            int id = body.getInt();
+            last = Math.max(last, sequence);
+            if (sequence <= start) continue;
+
+            Voyage voyage = voyages.get(id);
+            if (voyage != null && voyage.journalSequence >= sequence) continue; // Already in the snapshot
+            try {
+                switch (type) {
+                    case INIT:
+                        voyage = create(body, id);
+                        voyages.put(id, voyage);
+                        break;
+                    case SELL:
+                        if (voyage != null) voyage.sellTickets(readSeats(body));
+                        break;
+                    case REFUND:
+                        if (voyage != null) voyage.refundTickets(readSeats(body));
+                        break;
+                    case STOPS:
+                        if (voyage != null) voyage.addStops(readStops(body));
+                        break;
+                    case SEGMENT_SELL:
+                        if (voyage != null) {
+                            int origin = body.getInt();
+                            int destination = body.getInt();
+                            int[] seatNumbers = toArray(readSeats(body));
+                            voyage.sellSegment(origin, destination, seatNumbers, seatNumbers.length);
+                        }
+                        break;
+                    case SEGMENT_REFUND:
+                        if (voyage != null) {
+                            int origin = body.getInt();
+                            int destination = body.getInt();
+                            int[] seatNumbers = toArray(readSeats(body));
+                            voyage.refundSegment(origin, destination, seatNumbers, seatNumbers.length);
+                        }
+                        break;
+                    case CANCEL:
+                        if (voyage != null) {
+                            voyage.cancelVoyage();
+                            voyages.remove(id);
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unknown journal record type " + type + " in " + path);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Corrupt journal record " + sequence + " in " + path, e);
+            }
+            if (voyage != null) voyage.journalSequence = sequence;
+        }
+        return last;
+    }
+
+    /**
+     * Returns whether a damaged record is the torn end of a segment: it runs past the end of the file, it is the last
+     * record of the file, or only zeros follow from its start, as a crash can leave in a file's last block.
+     */
+    private static boolean isTornTail(ByteBuffer buffer, int recordStart, int length) {
+        if (length >= 0 && recordStart + 4L + length + 4 >= buffer.limit()) return true;
+        for (int i = recordStart; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) return false;
+        }
+        return true;
+    }
+
+    private static List<Integer> readSeats(ByteBuffer body) {
+        int count = body.getInt();
+        List<Integer> seatNumbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            seatNumbers.add(body.getInt());
+        }
+        return seatNumbers;
+    }
+
+    private static String[] readStops(ByteBuffer body) {
+        String[] stops = new String[body.getInt()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = getString(body);
+        }
+        return stops;
+    }
+
+    /**
+     * Reads the stops and segment sales written by {@link #writeVoyage} and restores them on the voyage.
+     */
+    private static void readSegments(ByteBuffer buffer, Voyage voyage) {
+        if (buffer.getInt(buffer.position()) < 0) {
+            buffer.getInt();
+            return;
+        }
+        String[] stops = readStops(buffer);
+        double segmentRevenue = buffer.getDouble();
+        long[] soldSegments = new long[buffer.getInt()];
+        for (int i = 0; i < soldSegments.length; i++) {
+            soldSegments[i] = buffer.getLong();
+        }
+        voyage.restoreSegments(stops, soldSegments, segmentRevenue);
+    }
+
+    /**
+     * Writes the fields a voyage was initialized with: bus type, rows, price, refund cut, premium fee, from and to.
+     */
+    private static ByteBuffer putInitFields(ByteBuffer buffer, Voyage voyage, byte[] from, byte[] to) {
+        buffer.put(busType(voyage)).putInt(voyage.getRows()).putDouble(voyage.getPrice())
+                .putDouble(voyage.getRefundCut())
+                .putInt(voyage instanceof PremiumBus ? ((PremiumBus) voyage).getPremiumFee() : 0);
+        return buffer.putInt(from.length).put(from).putInt(to.length).put(to);
+    }
+
+    /**
+     * Reads the fields written by {@link #putInitFields} and creates the voyage they describe.
+     */
+    private static Voyage create(ByteBuffer buffer, int id) throws IOException {
+        byte type = buffer.get();
+        int rows = buffer.getInt();
+        double price = buffer.getDouble();
+        double refundCut = buffer.getDouble();
+        int premiumFee = buffer.getInt();
+        String from = getString(buffer);
+        String to = getString(buffer);
+        switch (type) {
+            case STANDARD:
+                return new StandardBus(id, from, to, rows, price, refundCut);
+            case PREMIUM:
+                return new PremiumBus(id, from, to, rows, price, refundCut, premiumFee);
+            case MINIBUS:
+                return new Minibus(id, from, to, rows, price);
+            default:
+                throw new IOException("Unknown bus type " + type + " for voyage " + id);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte busType(Voyage voyage) {
+        if (voyage instanceof PremiumBus) return PREMIUM;
+        if (voyage instanceof Minibus) return MINIBUS;
+        return STANDARD;
+    }
+
+    private void openSegment(long number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(journalPath(number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path journalPath(long number) {
+        return directory.resolve("journal-" + number + ".log");
+    }
+
+    private Path snapshotPath(long number) {
+        return directory.resolve("snapshot-" + number + ".bin");
+    }
+
+    /**
+     * Lists the files named {@code prefix<n>suffix} in the journal directory by n.
+     */
+    private TreeMap<Long, Path> listFiles(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), path);
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The {@code BookingLoadTest} class measures the throughput and latency of a {@code BookingServer} on this machine.
+ * Every connection initializes its own voyage and then keeps a fixed number of sell and refund commands in flight,
+ * so connections work on independent voyages as separate booking clients would.
+ *
+ * <p>Usage: {@code java BookingLoadTest [port] [connections] [commands per connection] [pipeline depth]}.
+ * With port 0, the default, a server is started in this process on a free port.
+ */
+public class BookingLoadTest {
+    private static final int ROWS = 100;
+    private static final int FIRST_VOYAGE_ID = 1_000_000;
+
+    /**
+     * Runs the load test and prints the throughput and latency percentiles.
+     *
+     * @param args The optional port, connection count, commands per connection and pipeline depth.
+     * @throws Exception If the server cannot be reached or a connection fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        BookingServer server = null;
+        if (port == 0) {
+            server = new BookingServer(new VoyageManager(), 0, false);
+            server.start();
+            port = server.getPort();
+        }
+
+        ExecutorService executor = BookingServer.newConnectionExecutor();
+        try {
+            // One warm-up round, then the measured one
+            run(executor, port, connections, Math.min(commands, 5_000), depth, FIRST_VOYAGE_ID);
+            long start = System.nanoTime();
+            long[] latencies = run(executor, port, connections, commands, depth, FIRST_VOYAGE_ID + connections);
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            System.out.printf("%d connections, %d commands each, pipeline depth %d%n", connections, commands, depth);
+            System.out.printf("Throughput: %.0f commands/s%n", latencies.length / (elapsed / 1e9));
+            System.out.printf("Latency: p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                    percentile(latencies, 0.50) / 1e3, percentile(latencies, 0.99) / 1e3,
+                    latencies[latencies.length - 1] / 1e3);
+        } finally {
+            executor.shutdown();
+            if (server != null) server.close();
+        }
+    }
+
+    /**
+     * Runs all connections to completion.
+     *
+     * @return the latencies of all commands in nanoseconds
+     */
+    private static long[] run(ExecutorService executor, int port, int connections, int commands, int depth,
+                              int firstVoyageId) throws Exception {
+        Future<?>[] futures = new Future<?>[connections];
+        long[][] latencies = new long[connections][];
+        for (int c = 0; c < connections; c++) {
+            int connection = c;
+            futures[c] = executor.submit(() -> {
+                latencies[connection] = runConnection(port, firstVoyageId + connection, commands, depth);
+                return null;
+            });
+        }
+        int total = 0;
+        for (int c = 0; c < connections; c++) {
+            futures[c].get();
+            total += latencies[c].length;
+        }
+        long[] all = new long[total];
+        int offset = 0;
+        for (long[] connectionLatencies : latencies) {
+            System.arraycopy(connectionLatencies, 0, all, offset, connectionLatencies.length);
+            offset += connectionLatencies.length;
+        }
+        return all;
+    }
+
+    /**
+     * Sells and refunds seats on a voyage of its own, keeping up to {@code depth} commands unanswered.
+     *
+     * @return the latency of every command in nanoseconds
+     */
+    private static long[] runConnection(int port, int voyageId, int commands, int depth) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            out.write("INIT_VOYAGE\tStandard\t" + voyageId + "\tAnkara\tIzmir\t" + ROWS + "\t100\t10\n");
+            out.flush();
+            readResponse(in);
+
+            long[] sent = new long[commands];
+            long[] latencies = new long[commands];
+            int next = 0;
+            for (int answered = 0; answered < commands; answered++) {
+                while (next < commands && next - answered < depth) {
+                    out.write(command(voyageId, next));
+                    sent[next++] = System.nanoTime();
+                }
+                out.flush();
+                readResponse(in);
+                latencies[answered] = System.nanoTime() - sent[answered];
+            }
+            return latencies;
+        }
+    }
+
+    /**
+     * Returns the i-th command of a connection: a sale and then a refund of the same seat, moving through the bus.
+     */
+    private static String command(int voyageId, int i) {
+        int seat = (i / 2) % (ROWS * 4) + 1;
+        return (i % 2 == 0 ? "SELL_TICKET\t" : "REFUND_TICKET\t") + voyageId + "\t" + seat + "\n";
+    }
+
+    private static void readResponse(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            // Skip the response body
+        }
+        if (line == null) throw new IOException("The server closed the connection");
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
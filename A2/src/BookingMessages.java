@@ -0,0 +1,174 @@
+/**
+ * The {@code BookingMessages} class writes the result messages of ticket sales and refunds straight into an output
+ * builder. Every message is a template whose fixed parts are kept as constants and whose values are appended in
+ * place, so writing a message allocates nothing, where {@code String.format} would parse its format and build
+ * several strings every time.
+ *
+ * <p>The text is exactly what {@code String.format} produces with the default locale. Amounts are written with two
+ * decimals by rounding to whole cents; an amount too close to half a cent for that to be certain, and every amount
+ * when the default locale does not write numbers plainly, is still written with {@code String.format}.
+ */
+public class BookingMessages {
+    // "Seat %s of the Voyage %d from %s to %s was successfully sold for %.2f TL."
+    private static final String SEAT = "Seat ";
+    private static final String OF_THE_VOYAGE = " of the Voyage ";
+    private static final String FROM = " from ";
+    private static final String TO = " to ";
+    private static final String SOLD_FOR = " was successfully sold for ";
+    private static final String REFUNDED_FOR = " was successfully refunded for ";
+    private static final String TL = " TL.";
+
+    // "ERROR: There is no voyage with ID of %d!"
+    private static final String NO_VOYAGE = "ERROR: There is no voyage with ID of ";
+    // "ERROR: %d is not a positive integer, seat number must be a positive integer!"
+    private static final String NOT_POSITIVE = " is not a positive integer, seat number must be a positive integer!";
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // Whether the default locale formats numbers as plain ASCII digits with a '.' decimal separator
+    private static final boolean PLAIN_NUMBERS = String.format("%.2f", 1234.5).equals("1234.50")
+            && String.format("%d", -1234567890).equals("-1234567890");
+
+    private static final double MAX_FAST_AMOUNT = 1e9; // Below this, a double is exact to far less than a cent
+    private static final double TIE_MARGIN = 1e-4; // In cents; much wider than any rounding error below the maximum
+
+    private BookingMessages() {
+    }
+
+    /**
+     * Appends the message of a successful sale, without a line end.
+     *
+     * @param out         the builder to append to
+     * @param seatNumbers the buffer holding the sold seat numbers
+     * @param count       the number of seat numbers in the buffer
+     * @param voyage      the voyage
+     * @param totalPrice  the total price of the seats
+     */
+    public static void appendSold(StringBuilder out, int[] seatNumbers, int count, Voyage voyage, double totalPrice) {
+        appendSold(out, seatNumbers, count, voyage.getId(), voyage.getFrom(), voyage.getTo(), totalPrice);
+    }
+
+    /**
+     * Appends the message of a successful sale between two stops, without a line end.
+     *
+     * @param out         the builder to append to
+     * @param seatNumbers the buffer holding the sold seat numbers
+     * @param count       the number of seat numbers in the buffer
+     * @param voyageId    the voyage ID
+     * @param from        the stop the seats are sold from
+     * @param to          the stop the seats are sold to
+     * @param totalPrice  the total price of the seats
+     */
+    public static void appendSold(StringBuilder out, int[] seatNumbers, int count, int voyageId, String from,
+                                  String to, double totalPrice) {
+        appendSeats(out, seatNumbers, count, voyageId, from, to);
+        out.append(SOLD_FOR);
+        appendAmount(out, totalPrice);
+        out.append(TL);
+    }
+
+    /**
+     * Appends the message of a successful refund, ending with the line separator.
+     *
+     * @param out         the builder to append to
+     * @param seatNumbers the buffer holding the refunded seat numbers
+     * @param count       the number of seat numbers in the buffer
+     * @param voyage      the voyage
+     * @param totalRefund the total refund amount
+     */
+    public static void appendRefunded(StringBuilder out, int[] seatNumbers, int count, Voyage voyage,
+                                      double totalRefund) {
+        appendRefunded(out, seatNumbers, count, voyage.getId(), voyage.getFrom(), voyage.getTo(), totalRefund);
+    }
+
+    /**
+     * Appends the message of a successful refund between two stops, ending with the line separator.
+     *
+     * @param out         the builder to append to
+     * @param seatNumbers the buffer holding the refunded seat numbers
+     * @param count       the number of seat numbers in the buffer
+     * @param voyageId    the voyage ID
+     * @param from        the stop the seats were sold from
+     * @param to          the stop the seats were sold to
+     * @param totalRefund the total refund amount
+     */
+    public static void appendRefunded(StringBuilder out, int[] seatNumbers, int count, int voyageId, String from,
+                                      String to, double totalRefund) {
+        appendSeats(out, seatNumbers, count, voyageId, from, to);
+        out.append(REFUNDED_FOR);
+        appendAmount(out, totalRefund);
+        out.append(TL).append(LINE_SEPARATOR);
+    }
+
+    /**
+     * Appends the error for a voyage that does not exist, without a line end.
+     *
+     * @param out      the builder to append to
+     * @param voyageId the voyage ID
+     */
+    public static void appendNoVoyage(StringBuilder out, int voyageId) {
+        out.append(NO_VOYAGE);
+        appendInt(out, voyageId);
+        out.append('!');
+    }
+
+    /**
+     * Appends the error for a seat number that is not positive, without a line end.
+     *
+     * @param out        the builder to append to
+     * @param seatNumber the seat number
+     */
+    public static void appendNotPositive(StringBuilder out, int seatNumber) {
+        out.append("ERROR: ");
+        appendInt(out, seatNumber);
+        out.append(NOT_POSITIVE);
+    }
+
+    /**
+     * Appends an amount like {@code String.format("%.2f", amount)}.
+     *
+     * @param out    the builder to append to
+     * @param amount the amount
+     */
+    public static void appendAmount(StringBuilder out, double amount) {
+        // Excludes NaN and negative amounts, including -0.0
+        if (PLAIN_NUMBERS && amount >= 0 && amount < MAX_FAST_AMOUNT && Double.doubleToRawLongBits(amount) >= 0) {
+            double scaled = amount * 100;
+            double whole = Math.floor(scaled);
+            double fraction = scaled - whole;
+            // Formatter rounds half up on the shortest decimal form, which only matters near half a cent
+            if (Math.abs(fraction - 0.5) > TIE_MARGIN) {
+                long cents = (long) whole + (fraction > 0.5 ? 1 : 0);
+                int remainder = (int) (cents % 100);
+                out.append(cents / 100).append('.');
+                if (remainder < 10) out.append('0');
+                out.append(remainder);
+                return;
+            }
+        }
+        out.append(String.format("%.2f", amount));
+    }
+
+    /**
+     * Appends "Seat 1-2-3 of the Voyage ID from A to B".
+     */
+    private static void appendSeats(StringBuilder out, int[] seatNumbers, int count, int voyageId, String from,
+                                    String to) {
+        out.append(SEAT);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) out.append('-');
+            out.append(seatNumbers[i]);
+        }
+        out.append(OF_THE_VOYAGE);
+        appendInt(out, voyageId);
+        out.append(FROM).append(from).append(TO).append(to);
+    }
+
+    private static void appendInt(StringBuilder out, int value) {
+        if (PLAIN_NUMBERS) {
+            out.append(value);
+        } else {
+            out.append(String.format("%d", value));
+        }
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code BookingServer} class serves booking commands over a TCP socket on the loopback interface.
+ * Clients send the same tab-separated commands as in an input file, one per line, and every connection is handled by
+ * its own thread running the commands through one {@code VoyageManager}, which is safe to use from many threads.
+ * Virtual threads are used when the Java runtime has them, and a cached pool of platform threads otherwise.
+ *
+ * <p>Each command is answered with its log as it would appear in the output file, starting with the
+ * {@code COMMAND:} line, followed by one empty line that ends the response. A command that fails is answered with
+ * {@code Error: <message>} as the last line. Responses come back in command order, so a client may pipeline
+ * commands without waiting for each answer; the server flushes its responses whenever it has no more buffered
+ * commands to read.
+ *
+ * <p>Command metrics are always published through JMX, and also written to a file as in {@code BookingSystem} when
+ * the system property {@value BookingSystem#METRICS_PROPERTY} is set.
+ */
+public class BookingServer implements Closeable {
+    private final VoyageManager manager;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final boolean logCommands;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Constructs a {@code BookingServer} listening on a loopback port. Call {@link #start()} to accept connections.
+     *
+     * @param manager     The manager that runs the commands of every connection.
+     * @param port        The port to listen on, or 0 to pick a free one.
+     * @param logCommands True to also write every command's log through {@link VoyageManager#input(String, StringBuilder)}.
+     * @throws IOException If the port cannot be bound.
+     */
+    public BookingServer(VoyageManager manager, int port, boolean logCommands) throws IOException {
+        this.manager = manager;
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.executor = newConnectionExecutor();
+        this.logCommands = logCommands;
+        this.acceptor = new Thread(this::acceptLoop, "booking-server-acceptor");
+    }
+
+    /**
+     * Starts accepting connections in the background.
+     */
+    public void start() {
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits for their threads to finish.
+     *
+     * @throws IOException If the server socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closing
+            }
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                break; // The server socket was closed
+            } catch (IOException e) {
+                System.out.println("An I/O error occurred: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs the commands of one connection until the client closes it.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.trim();
+                if (command.isEmpty()) continue;
+
+                response.setLength(0);
+                try {
+                    if (logCommands) {
+                        manager.input(command, response);
+                    } else {
+                        manager.process(command, response);
+                    }
+                } catch (Exception e) {
+                    response.append("\nError: ").append(e.getMessage());
+                }
+                writeResponse(out, response);
+
+                // Answer a whole pipelined batch with one flush
+                if (!in.ready()) out.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; nothing to answer
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Writes a response in wire form: trimmed non-empty lines, then an empty line.
+     */
+    private static void writeResponse(Writer out, CharSequence response) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i <= response.length(); i++) {
+            if (i == response.length() || response.charAt(i) == '\n') {
+                int start = lineStart;
+                int end = i;
+                while (start < end && response.charAt(start) <= ' ') start++;
+                while (end > start && response.charAt(end - 1) <= ' ') end--;
+                if (start < end) {
+                    out.append(response, start, end).append('\n');
+                }
+                lineStart = i + 1;
+            }
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread, or on a cached pool of daemon threads
+     * if the Java runtime has no virtual threads.
+     *
+     * @return the executor for connection handlers
+     */
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "booking-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Runs the server until the process is stopped.
+     *
+     * @param args args[0] is the port to listen on; the optional args[1] is the path of an output file that
+     *             receives the command log as in batch mode.
+     */
+    public static void main(String[] args) {
+        try {
+            int port = Integer.parseInt(args[0]);
+            OutputSink output = args.length > 1 ? new OutputSink(args[1]) : null;
+            VoyageManager manager = new VoyageManager(output);
+            String journalDirectory = System.getProperty(BookingSystem.JOURNAL_PROPERTY);
+            if (journalDirectory != null) {
+                manager.openJournal(Paths.get(journalDirectory));
+            }
+            manager.getMetrics().register(); // A long-running server is always observable through JMX
+            BookingSystem.startMetrics(manager.getMetrics());
+
+            BookingServer server = new BookingServer(manager, port, output != null);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.close();
+                    if (output != null) output.close();
+                    manager.closeJournal();
+                    manager.getMetrics().close();
+                } catch (IOException e) {
+                    System.out.println("An I/O error occurred: " + e.getMessage());
+                }
+            }));
+            server.start();
+            System.out.println("Booking server is listening on port " + server.getPort() + ".");
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            System.out.println("ERROR: This program needs the port to listen on as its first command line argument," +
+                    " optionally followed by the path to the output file. Sample usage can be as follows:" +
+                    " \"java BookingServer 7070 output.txt\". Program is going to terminate!");
+        } catch (IOException e) {
+            System.out.println("An I/O error occurred: " + e.getMessage());
+        }
+    }
+}
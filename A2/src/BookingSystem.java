@@ -1,5 +1,8 @@
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 
 /**
@@ -8,11 +11,28 @@ import java.nio.file.NoSuchFileException;
  * the command processing for managing voyages using the {@code VoyageManager}.
  *
  * <p>It reads the input commands from a file, processes each command, and if the final command
- * isn't a Z_REPORT, it triggers the generation of a Z report. The class also handles the reading
- * and rewriting of debug information from a secondary file provided as a command-line argument.
+ * isn't a Z_REPORT, it triggers the generation of a Z report. All command logs are written through a single
+ * {@code OutputSink} directly to the output file provided as a command-line argument.
+ *
+ * <p>If the system property {@value #JOURNAL_PROPERTY} names a directory, voyages are recovered from the journal
+ * in that directory before the commands run, and every state change is journaled there. If the system property
+ * {@value #WORKERS_PROPERTY} is greater than one, commands run on that many threads sharded by voyage, with the same
+ * output as running them one by one. If the system property {@value #METRICS_PROPERTY} names a file, command metrics
+ * are published through JMX and written to that file every {@value #METRICS_INTERVAL_PROPERTY} seconds (10 by
+ * default) and once more at the end.
+ *
+ * <p>If the input path is a directory, every file in it is processed as a separate input by a {@link BatchRunner},
+ * up to {@value #BATCH_THREADS_PROPERTY} files at once (one per processor by default), and the output path is the
+ * directory the output of each file is written to under the same name.
  */
 
 public class BookingSystem {
+    public static final String JOURNAL_PROPERTY = "booking.journal";
+    public static final String WORKERS_PROPERTY = "booking.workers";
+    public static final String METRICS_PROPERTY = "booking.metrics";
+    public static final String METRICS_INTERVAL_PROPERTY = "booking.metrics.interval";
+    public static final String BATCH_THREADS_PROPERTY = "booking.batch.threads";
+
     /**
      * The main method of the booking system. It reads commands from the input file specified
      * by the first command-line argument and outputs the results and logs to the output file
@@ -24,37 +44,32 @@ public class BookingSystem {
      * @throws ArrayIndexOutOfBoundsException If the required command-line arguments are not provided.
      * @throws NoSuchFileException If the specified file paths do not exist or cannot be accessed.
      * @throws IOException If an I/O error occurs reading from the input file or writing to the output file.
+     * @throws java.io.UncheckedIOException If an I/O error occurs while writing command output.
      * @throws Exception If any other unexpected error occurs during the execution of the program.
      */
     public static void main(String[] args) {
 
         try {
-            String[] input = FileInput.readFile(args[0], true, true);
-
-            String lastCommand = "";
-
-            for (String line : input) {
-                VoyageManager.input(line);
-                lastCommand = line.split("\t")[0];
-
-            }
-
-            if (!lastCommand.equals("Z_REPORT")) {
-                VoyageManager.printZReport();
+            if (Files.isDirectory(Paths.get(args[0]))) {
+                runBatch(Paths.get(args[0]), Paths.get(args[1]));
+                return;
             }
+            String[] input = FileInput.readFile(args[0], true, true);
 
-
-            String[] debug = FileInput.readFile(args[1], true, true);
-
-
-            FileOutput.writeToFile(args[1], "", false, false);
-
-            for (int i = 0; debug.length > i; i++) {
-                FileOutput.writeToFile(args[1], debug[i], true, false);
-                if (i != debug.length - 1) {
-                    FileOutput.writeToFile(args[1], "", true, true);
+            // Output goes straight to its final form in args[1]; the sink is closed even if a command fails
+            try (OutputSink output = new OutputSink(args[1])) {
+                VoyageManager manager = new VoyageManager(output);
+                String journalDirectory = System.getProperty(JOURNAL_PROPERTY);
+                if (journalDirectory != null) {
+                    manager.openJournal(Paths.get(journalDirectory));
+                }
+                startMetrics(manager.getMetrics());
+                try {
+                    run(manager, input, Integer.getInteger(WORKERS_PROPERTY, 1));
+                } finally {
+                    manager.closeJournal();
+                    manager.getMetrics().close();
                 }
-
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             String error = "ERROR: This program works exactly with two command line arguments, " +
@@ -75,4 +90,63 @@ public class BookingSystem {
             System.out.println("Error: " + e.getMessage());
         }
     }
+
+    /**
+     * Runs the commands of one input through a manager and prints a Z report at the end unless the last command was
+     * one.
+     *
+     * @param manager The manager, which writes the output.
+     * @param input   The commands, in input order.
+     * @param workers The number of threads to run the commands on, sharded by voyage when more than one.
+     */
+    static void run(VoyageManager manager, String[] input, int workers) {
+        String lastCommand = "";
+
+        if (workers > 1) {
+            new ShardedCommandRunner(manager, workers).run(input);
+            if (input.length > 0) lastCommand = input[input.length - 1].split("\t")[0];
+        } else {
+            for (String line : input) {
+                manager.input(line);
+                lastCommand = line.split("\t")[0];
+
+            }
+        }
+
+        if (!lastCommand.equals("Z_REPORT")) {
+            manager.printZReport();
+        }
+    }
+
+    /**
+     * Processes every file of an input directory into an output directory, with metrics shared by all files.
+     * Journals, if enabled, go into a subdirectory of the journal directory named after each file.
+     */
+    private static void runBatch(Path inputDirectory, Path outputDirectory) throws IOException {
+        String journalDirectory = System.getProperty(JOURNAL_PROPERTY);
+        CommandMetrics metrics = new CommandMetrics();
+        startMetrics(metrics);
+        try {
+            new BatchRunner(Integer.getInteger(BATCH_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                    Integer.getInteger(WORKERS_PROPERTY, 1), metrics,
+                    journalDirectory == null ? null : Paths.get(journalDirectory))
+                    .run(inputDirectory, outputDirectory);
+        } finally {
+            metrics.close();
+        }
+    }
+
+    /**
+     * Publishes the command metrics through JMX and starts writing them to the file named by
+     * {@value #METRICS_PROPERTY}, if the property is set.
+     *
+     * @param metrics The metrics to publish.
+     */
+    static void startMetrics(CommandMetrics metrics) {
+        String metricsFile = System.getProperty(METRICS_PROPERTY);
+        if (metricsFile != null) {
+            metrics.register();
+            metrics.startDump(Paths.get(metricsFile), 1000 * Long.getLong(METRICS_INTERVAL_PROPERTY, 10));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+import java.util.Arrays;
+
+/**
+ * The {@code CommandDecoder} class splits a command into its tab-separated fields and parses numbers and seat lists
+ * in place, without creating strings or boxed integers. A decoder is reused for one command after another, so it is
+ * not thread-safe; every thread keeps its own.
+ *
+ * <p>Fields are split exactly like {@code input.split("\t")} and seat lists like {@code field.split("_")}: empty
+ * fields at the end are dropped and all others are kept. Numbers are parsed exactly like {@link Integer#parseInt}
+ * and fail with the same exceptions; plain ASCII numbers are parsed directly, and anything else is handed to
+ * {@code Integer.parseInt} itself.
+ */
+public class CommandDecoder {
+    private CharSequence line = "";
+    private int[] fieldStarts = new int[16];
+    private int[] fieldEnds = new int[16];
+    private int fieldCount;
+    private int[] seats = new int[16];
+    private int seatCount;
+
+    /**
+     * Splits a command into fields. The previous command's fields and seats are discarded.
+     *
+     * @param command the command
+     */
+    public void reset(CharSequence command) {
+        line = command;
+        fieldCount = 0;
+        seatCount = 0;
+        int start = 0;
+        for (int i = 0; i < command.length(); i++) {
+            if (command.charAt(i) == '\t') {
+                addField(start, i);
+                start = i + 1;
+            }
+        }
+        if (fieldCount == 0) {
+            // Like split(), a command without a tab is a single field, even if it is empty
+            addField(0, command.length());
+            return;
+        }
+        addField(start, command.length());
+        while (fieldCount > 0 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    /**
+     * Returns the number of fields of the command.
+     *
+     * @return the field count
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns whether a field is equal to the given text.
+     *
+     * @param index the field index
+     * @param text  the text to compare with
+     * @return {@code true} if the field exists and is equal to the text
+     */
+    public boolean fieldEquals(int index, String text) {
+        if (index >= fieldCount) return false;
+        int start = fieldStarts[index];
+        if (fieldEnds[index] - start != text.length()) return false;
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a field as an integer.
+     *
+     * @param index the field index
+     * @return the value of the field
+     * @throws ArrayIndexOutOfBoundsException if the command has no such field
+     * @throws NumberFormatException          if the field is not an integer
+     */
+    public int intField(int index) {
+        checkIndex(index);
+        return parseInt(fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * Parses a field as a list of seat numbers separated by underscores. The seats are then available through
+     * {@link #seatCount()} and {@link #seats()}.
+     *
+     * @param index the field index
+     * @throws ArrayIndexOutOfBoundsException if the command has no such field
+     * @throws NumberFormatException          if a seat number is not an integer
+     */
+    public void parseSeats(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index];
+        int end = fieldEnds[index];
+        seatCount = 0;
+
+        int separator = start;
+        while (separator < end && line.charAt(separator) != '_') separator++;
+        if (separator < end) {
+            // Like split(), empty seat numbers at the end are dropped, so only underscores mean no seats at all
+            while (end > start && line.charAt(end - 1) == '_') end--;
+            if (end == start) return;
+        }
+        for (int i = start; i <= end; i++) {
+            if (i == end || line.charAt(i) == '_') {
+                if (seatCount == seats.length) seats = Arrays.copyOf(seats, 2 * seatCount);
+                seats[seatCount++] = parseInt(start, i);
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of seats parsed by the last {@link #parseSeats(int)}.
+     *
+     * @return the seat count
+     */
+    public int seatCount() {
+        return seatCount;
+    }
+
+    /**
+     * Returns the buffer holding the seats parsed by the last {@link #parseSeats(int)}. Only the first
+     * {@link #seatCount()} entries are valid, and the buffer is reused by the next command.
+     *
+     * @return the seat buffer
+     */
+    public int[] seats() {
+        return seats;
+    }
+
+    private void addField(int start, int end) {
+        if (fieldCount == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, 2 * fieldCount);
+            fieldEnds = Arrays.copyOf(fieldEnds, 2 * fieldCount);
+        }
+        fieldStarts[fieldCount] = start;
+        fieldEnds[fieldCount] = end;
+        fieldCount++;
+    }
+
+    private void checkIndex(int index) {
+        if (index >= fieldCount) {
+            // The same exception as indexing the array returned by split()
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + fieldCount);
+        }
+    }
+
+    /**
+     * Parses the characters in [start, end) like {@link Integer#parseInt}. Up to nine ASCII digits with an optional
+     * sign cannot overflow and are parsed here; everything else, including every invalid number, is left to
+     * {@code Integer.parseInt} so the result and the exception message are the same.
+     */
+    private int parseInt(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+            negative = line.charAt(i) == '-';
+            i++;
+        }
+        int digits = end - i;
+        if (digits > 0 && digits <= 9) {
+            int value = 0;
+            for (; i < end; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
+            }
+            if (i == end) return negative ? -value : value;
+        }
+        return Integer.parseInt(line.subSequence(start, end).toString());
+    }
+}
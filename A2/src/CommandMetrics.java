@@ -0,0 +1,324 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The {@code CommandMetrics} class counts the commands processed by {@code VoyageManager} and keeps a latency
+ * histogram for every command type, along with counters of the errors the commands report.
+ *
+ * <p>Recording is cheap enough to stay on for every command: a latency is one increment of a striped counter in a
+ * log-linear histogram whose buckets are an eighth of a power of two wide, so percentiles are accurate to within
+ * about 12%. Errors are classified from the first output line of a command, which is where every command reports
+ * its error, so commands that succeed cost only a comparison.
+ *
+ * <p>The metrics can be read through JMX once {@link #register()} is called, and written periodically as a text
+ * table by {@link #startDump(Path, long)}.
+ */
+public class CommandMetrics implements CommandMetricsMBean, Closeable {
+    public static final String OBJECT_NAME = "booking:type=CommandMetrics";
+
+    private static final String[] COMMAND_TYPES = {"INIT_VOYAGE", "SELL_TICKET", "SELL_BEST_SEATS", "REFUND_TICKET",
+            "PRINT_VOYAGE", "CANCEL_VOYAGE", "Z_REPORT", "ADD_STOPS", "SELL_SEGMENT", "REFUND_SEGMENT", "HOLD_TICKET",
+            "CONFIRM_TICKET", "RELEASE_TICKET", "SEARCH_VOYAGES", "INIT_VOYAGES",
+            "OTHER"};
+    private static final int OTHER = COMMAND_TYPES.length - 1;
+
+    private static final String[] ERROR_TYPES = {"NO_VOYAGE", "DUPLICATE_VOYAGE", "INVALID_NUMBER", "ERRONEOUS_USAGE",
+            "UNKNOWN_COMMAND", "NO_SUCH_SEAT", "SEATS_SOLD", "SEATS_EMPTY", "NOT_REFUNDABLE", "NO_SEATS_TOGETHER",
+            "NO_SEGMENT", "NO_HOLD", "EXCEPTION"};
+    // The text that identifies each error type in its message, in the order of ERROR_TYPES
+    private static final String[] ERROR_KEYS = {"There is no voyage", "There is already a voyage", "is not a",
+            "Erroneous usage", "There is no command", "no such a seat", "already sold", "already empty",
+            "not refundable", "available seats together", "does not go from", "There is no hold"};
+    private static final int ERRONEOUS_USAGE = 3;
+    private static final int UNKNOWN_COMMAND = 4;
+    private static final int EXCEPTION = ERROR_TYPES.length - 1;
+    private static final String ERROR_PREFIX = "ERROR: ";
+
+    // Values below 2^(SUB_BITS + 1) get a bucket each; above, every power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - (SUB_BITS + 1)) * SUB_BUCKETS;
+
+    private final LongAdder[][] latencyBuckets = new LongAdder[COMMAND_TYPES.length][BUCKETS];
+    private final LongAdder[] totalNanos = new LongAdder[COMMAND_TYPES.length];
+    private final LongAdder[] errors = new LongAdder[ERROR_TYPES.length];
+
+    private ScheduledExecutorService dumper;
+    private Path dumpFile;
+
+    /**
+     * Constructs a {@code CommandMetrics} with every counter at zero.
+     */
+    public CommandMetrics() {
+        for (int t = 0; t < COMMAND_TYPES.length; t++) {
+            for (int b = 0; b < BUCKETS; b++) {
+                latencyBuckets[t][b] = new LongAdder();
+            }
+            totalNanos[t] = new LongAdder();
+        }
+        for (int e = 0; e < ERROR_TYPES.length; e++) {
+            errors[e] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the type of a command, to be passed to {@link #record}. This method allocates nothing.
+     *
+     * @param command the command
+     * @return the command type index
+     */
+    public static int typeOf(String command) {
+        int end = command.indexOf('\t');
+        if (end < 0) end = command.length();
+        for (int t = 0; t < OTHER; t++) {
+            if (COMMAND_TYPES[t].length() == end && command.startsWith(COMMAND_TYPES[t])) return t;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Records a processed command.
+     *
+     * @param type        the command type, from {@link #typeOf(String)}
+     * @param nanos       the processing time in nanoseconds
+     * @param out         the builder holding the command's output
+     * @param resultStart the index in {@code out} of the first line after the command's own log line
+     * @param failed      {@code true} if the command threw an exception
+     */
+    public void record(int type, long nanos, CharSequence out, int resultStart, boolean failed) {
+        latencyBuckets[type][bucketOf(nanos)].increment();
+        totalNanos[type].add(nanos);
+        if (failed) errors[EXCEPTION].increment();
+        if (startsWithError(out, resultStart)) {
+            errors[classify(out, resultStart + ERROR_PREFIX.length())].increment();
+        }
+    }
+
+    /**
+     * Returns the histogram bucket of a latency.
+     */
+    static int bucketOf(long nanos) {
+        if (nanos < LINEAR_LIMIT) return (int) Math.max(0, nanos);
+        int msb = 63 - Long.numberOfLeadingZeros(nanos);
+        return LINEAR_LIMIT + (msb - SUB_BITS - 1) * SUB_BUCKETS + (int) ((nanos >>> (msb - SUB_BITS)) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest latency that falls into a histogram bucket.
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        int msb = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BITS + 1;
+        long sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (msb - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (msb - SUB_BITS)) + width - 1;
+    }
+
+    private static boolean startsWithError(CharSequence out, int start) {
+        if (out.length() < start + ERROR_PREFIX.length()) return false;
+        for (int i = 0; i < ERROR_PREFIX.length(); i++) {
+            if (out.charAt(start + i) != ERROR_PREFIX.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the error type of the message on the line starting at the given index.
+     */
+    private static int classify(CharSequence out, int start) {
+        int end = start;
+        while (end < out.length() && out.charAt(end) != '\n') end++;
+        // The message of an unknown command ends with the command, which may contain any other key
+        String unknown = ERROR_KEYS[UNKNOWN_COMMAND];
+        if (contains(out, start, Math.min(end, start + unknown.length()), unknown)) return UNKNOWN_COMMAND;
+        for (int e = 0; e < ERROR_KEYS.length; e++) {
+            if (contains(out, start, end, ERROR_KEYS[e])) return e;
+        }
+        return ERRONEOUS_USAGE;
+    }
+
+    private static boolean contains(CharSequence out, int start, int end, String key) {
+        for (int i = start; i + key.length() <= end; i++) {
+            int k = 0;
+            while (k < key.length() && out.charAt(i + k) == key.charAt(k)) k++;
+            if (k == key.length()) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String[] getCommandTypes() {
+        return COMMAND_TYPES.clone();
+    }
+
+    @Override
+    public long[] getCommandCounts() {
+        long[] counts = new long[COMMAND_TYPES.length];
+        for (int t = 0; t < counts.length; t++) {
+            counts[t] = count(t);
+        }
+        return counts;
+    }
+
+    @Override
+    public String[] getErrorTypes() {
+        return ERROR_TYPES.clone();
+    }
+
+    @Override
+    public long[] getErrorCounts() {
+        long[] counts = new long[ERROR_TYPES.length];
+        for (int e = 0; e < counts.length; e++) {
+            counts[e] = errors[e].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public double getLatencyPercentile(String commandType, double percentile) {
+        for (int t = 0; t < COMMAND_TYPES.length; t++) {
+            if (COMMAND_TYPES[t].equals(commandType)) return percentileNanos(t, percentile) / 1e3;
+        }
+        throw new IllegalArgumentException("Unknown command type: " + commandType);
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-16s %10s %10s %10s %10s %10s %10s%n",
+                "Command", "Count", "Mean us", "p50 us", "p99 us", "p99.9 us", "Max us"));
+        for (int t = 0; t < COMMAND_TYPES.length; t++) {
+            long count = count(t);
+            if (count == 0) continue;
+            report.append(String.format("%-16s %10d %10.2f %10.2f %10.2f %10.2f %10.2f%n", COMMAND_TYPES[t], count,
+                    totalNanos[t].sum() / 1e3 / count, percentileNanos(t, 50) / 1e3, percentileNanos(t, 99) / 1e3,
+                    percentileNanos(t, 99.9) / 1e3, percentileNanos(t, 100) / 1e3));
+        }
+        report.append(String.format("%-16s %10s%n", "Error", "Count"));
+        for (int e = 0; e < ERROR_TYPES.length; e++) {
+            long count = errors[e].sum();
+            if (count > 0) report.append(String.format("%-16s %10d%n", ERROR_TYPES[e], count));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (int t = 0; t < COMMAND_TYPES.length; t++) {
+            for (LongAdder bucket : latencyBuckets[t]) {
+                bucket.reset();
+            }
+            totalNanos[t].reset();
+        }
+        for (LongAdder error : errors) {
+            error.reset();
+        }
+    }
+
+    private long count(int type) {
+        long count = 0;
+        for (LongAdder bucket : latencyBuckets[type]) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a latency percentile as the upper bound of the bucket it falls into, or 0 if there are no latencies.
+     */
+    private long percentileNanos(int type, double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = latencyBuckets[type][b].sum();
+            total += counts[b];
+        }
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        int last = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            if (counts[b] == 0) continue;
+            last = b;
+            seen += counts[b];
+            if (seen >= rank) return bucketUpperBound(b);
+        }
+        return bucketUpperBound(last);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under {@value #OBJECT_NAME}, unless they are already.
+     *
+     * @throws IllegalStateException if the registration fails
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the command metrics", e);
+        }
+    }
+
+    /**
+     * Starts writing the report to a file at a fixed interval, replacing the file each time. The file is written
+     * a last time by {@link #close()}.
+     *
+     * @param file           the file to write
+     * @param intervalMillis the interval between writes in milliseconds
+     */
+    public synchronized void startDump(Path file, long intervalMillis) {
+        if (dumper != null) dumper.shutdownNow();
+        dumpFile = file;
+        dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "booking-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(this::dump, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dump, if one was started, and writes the report a last time.
+     *
+     * @throws IOException if the report cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (dumper == null) return;
+        dumper.shutdownNow();
+        dumper = null;
+        writeReport(dumpFile);
+    }
+
+    private synchronized void dump() {
+        try {
+            writeReport(dumpFile);
+        } catch (IOException e) {
+            System.out.println("An I/O error occurred: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the report to a temporary file and moves it into place, so readers never see half a report.
+     */
+    private void writeReport(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, getReport().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
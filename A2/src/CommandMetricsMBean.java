@@ -0,0 +1,55 @@
+/**
+ * The {@code CommandMetricsMBean} interface is the JMX management interface of {@link CommandMetrics}.
+ * Latencies are in microseconds.
+ */
+public interface CommandMetricsMBean {
+
+    /**
+     * Returns the names of the command types, in the order of {@link #getCommandCounts()}.
+     *
+     * @return the command type names
+     */
+    String[] getCommandTypes();
+
+    /**
+     * Returns the number of commands processed of every type.
+     *
+     * @return the command counts
+     */
+    long[] getCommandCounts();
+
+    /**
+     * Returns the names of the error types, in the order of {@link #getErrorCounts()}.
+     *
+     * @return the error type names
+     */
+    String[] getErrorTypes();
+
+    /**
+     * Returns the number of errors reported of every type.
+     *
+     * @return the error counts
+     */
+    long[] getErrorCounts();
+
+    /**
+     * Returns a latency percentile of a command type.
+     *
+     * @param commandType the command type name
+     * @param percentile  the percentile, from 0 to 100
+     * @return the latency in microseconds, or 0 if no command of that type was processed
+     */
+    double getLatencyPercentile(String commandType, double percentile);
+
+    /**
+     * Returns all metrics as a text table.
+     *
+     * @return the report
+     */
+    String getReport();
+
+    /**
+     * Sets every counter and histogram back to zero.
+     */
+    void reset();
+}
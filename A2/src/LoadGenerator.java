@@ -0,0 +1,247 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The {@code LoadGenerator} class produces a realistic, reproducible stream of booking commands for capacity
+ * planning. The same seed and options always give the same commands, which can be written to a command file for
+ * {@code BookingSystem} or taken one at a time as a live stream.
+ *
+ * <p>The stream starts by initializing the configured number of voyages, with bus types drawn from the configured
+ * mix and row counts drawn from the configured range. After that, every command is drawn by the configured weights
+ * of sales, refunds, cancellations, voyage prints and Z reports. The generator keeps track of the sold seats of every
+ * voyage, so sales pick free seats and refunds pick sold ones, as real clients would; a cancelled voyage is replaced
+ * by a new one so the number of voyages stays the same. Minibus tickets are never refunded.
+ *
+ * <p>Options are given as {@code key=value} pairs; see {@link #LoadGenerator(String[])} for the keys.
+ */
+public class LoadGenerator {
+    private static final String[] CITIES = {"Ankara", "Istanbul", "Izmir", "Bursa", "Antalya", "Adana", "Konya", "Van"};
+    private static final String[] PRICES = {"100", "150", "225.5", "80", "99.99", "340"};
+
+    private long seed = 1;
+    private int firstVoyageId = 1;
+    private int voyageCount = 100;
+    private double standardShare = 0.5;
+    private double premiumShare = 0.3;
+    private double minibusShare = 0.2;
+    private int minRows = 5;
+    private int maxRows = 20;
+    private int maxSeatsPerCommand = 4;
+    private double sellWeight = 0.55;
+    private double refundWeight = 0.3;
+    private double cancelWeight = 0.005;
+    private double printWeight = 0.1;
+    private double reportWeight = 0.0001;
+
+    private final SplittableRandom random;
+    private final List<VoyageModel> voyages = new ArrayList<>();
+    private final List<VoyageModel> refundable = new ArrayList<>(); // Voyages that are not minibuses
+    private int nextVoyageId;
+    private int initialized = 0;
+
+    /**
+     * Constructs a {@code LoadGenerator} from {@code key=value} options. Every option has a default:
+     * <ul>
+     *     <li>{@code seed}: the random seed, 1</li>
+     *     <li>{@code voyages}: the number of voyages, 100</li>
+     *     <li>{@code firstId}: the ID of the first voyage, 1; later voyages get the following IDs</li>
+     *     <li>{@code standard}, {@code premium}, {@code minibus}: the bus type mix, 0.5, 0.3 and 0.2</li>
+     *     <li>{@code minRows}, {@code maxRows}: the range of seat rows, 5 to 20</li>
+     *     <li>{@code maxSeats}: the most seats sold or refunded by one command, 4</li>
+     *     <li>{@code sell}, {@code refund}, {@code cancel}, {@code print}, {@code report}: the command weights,
+     *     0.55, 0.3, 0.005, 0.1 and 0.0001</li>
+     * </ul>
+     *
+     * @param options the options
+     * @throws IllegalArgumentException if an option is unknown or its value is invalid
+     */
+    public LoadGenerator(String[] options) {
+        for (String option : options) {
+            int equals = option.indexOf('=');
+            if (equals < 0) throw new IllegalArgumentException("Option is not key=value: " + option);
+            String key = option.substring(0, equals);
+            String value = option.substring(equals + 1);
+            switch (key) {
+                case "seed": seed = Long.parseLong(value); break;
+                case "voyages": voyageCount = Integer.parseInt(value); break;
+                case "firstId": firstVoyageId = Integer.parseInt(value); break;
+                case "standard": standardShare = Double.parseDouble(value); break;
+                case "premium": premiumShare = Double.parseDouble(value); break;
+                case "minibus": minibusShare = Double.parseDouble(value); break;
+                case "minRows": minRows = Integer.parseInt(value); break;
+                case "maxRows": maxRows = Integer.parseInt(value); break;
+                case "maxSeats": maxSeatsPerCommand = Integer.parseInt(value); break;
+                case "sell": sellWeight = Double.parseDouble(value); break;
+                case "refund": refundWeight = Double.parseDouble(value); break;
+                case "cancel": cancelWeight = Double.parseDouble(value); break;
+                case "print": printWeight = Double.parseDouble(value); break;
+                case "report": reportWeight = Double.parseDouble(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+        if (voyageCount <= 0 || firstVoyageId <= 0 || minRows <= 0 || maxRows < minRows || maxSeatsPerCommand <= 0) {
+            throw new IllegalArgumentException("Voyages, IDs, rows and seats per command must be positive");
+        }
+        if (standardShare + premiumShare + minibusShare <= 0
+                || sellWeight + refundWeight + cancelWeight + printWeight + reportWeight <= 0) {
+            throw new IllegalArgumentException("The bus type mix and the command weights must not all be zero");
+        }
+        random = new SplittableRandom(seed);
+        nextVoyageId = firstVoyageId;
+    }
+
+    /**
+     * Returns the next command of the stream.
+     *
+     * @return the command, without a line end
+     */
+    public String next() {
+        if (initialized < voyageCount) {
+            initialized++;
+            return initVoyage();
+        }
+
+        double total = sellWeight + refundWeight + cancelWeight + printWeight + reportWeight;
+        double x = random.nextDouble() * total;
+        if ((x -= sellWeight) < 0) return sell();
+        if ((x -= refundWeight) < 0) return refund();
+        if ((x -= cancelWeight) < 0) return cancel();
+        if ((x -= printWeight) < 0) return "PRINT_VOYAGE\t" + pick(voyages).id;
+        return "Z_REPORT";
+    }
+
+    /**
+     * Returns the next commands of the stream.
+     *
+     * @param count the number of commands
+     * @return the commands
+     */
+    public String[] next(int count) {
+        String[] commands = new String[count];
+        for (int i = 0; i < count; i++) {
+            commands[i] = next();
+        }
+        return commands;
+    }
+
+    private String initVoyage() {
+        VoyageModel voyage = new VoyageModel();
+        voyage.id = nextVoyageId++;
+        int rows = minRows + random.nextInt(maxRows - minRows + 1);
+        String from = CITIES[random.nextInt(CITIES.length)];
+        String to = CITIES[random.nextInt(CITIES.length)];
+        String price = PRICES[random.nextInt(PRICES.length)];
+        int refundCut = random.nextInt(51);
+
+        double x = random.nextDouble() * (standardShare + premiumShare + minibusShare);
+        String command;
+        if (x < standardShare) {
+            voyage.seatCount = rows * 4;
+            command = String.join("\t", "INIT_VOYAGE", "Standard", Integer.toString(voyage.id), from, to,
+                    Integer.toString(rows), price, Integer.toString(refundCut));
+        } else if (x < standardShare + premiumShare) {
+            voyage.seatCount = rows * 3;
+            command = String.join("\t", "INIT_VOYAGE", "Premium", Integer.toString(voyage.id), from, to,
+                    Integer.toString(rows), price, Integer.toString(refundCut), Integer.toString(random.nextInt(51)));
+        } else {
+            voyage.seatCount = rows * 2;
+            voyage.minibus = true;
+            command = String.join("\t", "INIT_VOYAGE", "Minibus", Integer.toString(voyage.id), from, to,
+                    Integer.toString(rows), price);
+        }
+        voyages.add(voyage);
+        if (!voyage.minibus) refundable.add(voyage);
+        return command;
+    }
+
+    private String sell() {
+        VoyageModel voyage = pick(voyages);
+        int free = voyage.seatCount - voyage.sold.cardinality();
+        if (free == 0) return "PRINT_VOYAGE\t" + voyage.id; // A full voyage only gets looked at
+        int count = 1 + random.nextInt(Math.min(maxSeatsPerCommand, free));
+        StringBuilder command = new StringBuilder("SELL_TICKET\t").append(voyage.id).append('\t');
+        for (int i = 0; i < count; i++) {
+            int seat = voyage.sold.nextClearBit(random.nextInt(voyage.seatCount));
+            if (seat >= voyage.seatCount) seat = voyage.sold.nextClearBit(0);
+            voyage.sold.set(seat);
+            if (i > 0) command.append('_');
+            command.append(seat + 1);
+        }
+        return command.toString();
+    }
+
+    private String refund() {
+        if (refundable.isEmpty()) return sell();
+        VoyageModel voyage = pick(refundable);
+        int sold = voyage.sold.cardinality();
+        if (sold == 0) return sell();
+        int count = 1 + random.nextInt(Math.min(maxSeatsPerCommand, sold));
+        StringBuilder command = new StringBuilder("REFUND_TICKET\t").append(voyage.id).append('\t');
+        for (int i = 0; i < count; i++) {
+            int seat = voyage.sold.nextSetBit(random.nextInt(voyage.seatCount));
+            if (seat < 0) seat = voyage.sold.nextSetBit(0);
+            voyage.sold.clear(seat);
+            if (i > 0) command.append('_');
+            command.append(seat + 1);
+        }
+        return command.toString();
+    }
+
+    private String cancel() {
+        VoyageModel voyage = pick(voyages);
+        voyages.remove(voyage);
+        refundable.remove(voyage);
+        initialized--; // A new voyage takes its place
+        return "CANCEL_VOYAGE\t" + voyage.id;
+    }
+
+    private VoyageModel pick(List<VoyageModel> from) {
+        return from.get(random.nextInt(from.size()));
+    }
+
+    /**
+     * The seats of a generated voyage as the generator expects them to be in the booking system.
+     */
+    private static class VoyageModel {
+        int id;
+        int seatCount;
+        boolean minibus;
+        final BitSet sold = new BitSet(); // Bit n - 1 is set when seat number n is sold
+    }
+
+    /**
+     * Writes a command file.
+     *
+     * @param args args[0] is the path of the command file, args[1] the number of commands, and the rest are
+     *             options as described in {@link #LoadGenerator(String[])}.
+     */
+    public static void main(String[] args) {
+        try {
+            int count = Integer.parseInt(args[1]);
+            LoadGenerator generator = new LoadGenerator(Arrays.copyOfRange(args, 2, args.length));
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+                for (int i = 0; i < count; i++) {
+                    writer.write(generator.next());
+                    writer.write('\n');
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            System.out.println("ERROR: This program needs the path of the command file and the number of commands," +
+                    " optionally followed by key=value options. Sample usage can be as follows:" +
+                    " \"java LoadGenerator load.txt 100000 seed=7 voyages=500 cancel=0.01\". " +
+                    "Program is going to terminate!");
+        } catch (IllegalArgumentException e) {
+            System.out.println("ERROR: " + e.getMessage());
+        } catch (IOException e) {
+            System.out.println("An I/O error occurred: " + e.getMessage());
+        }
+    }
+}
@@ -7,6 +7,8 @@
  * uniform pricing model for all seats.
  */
 public class Minibus extends Voyage {
+    // A single block of two seats is drawn per row, though four seats per row are counted, as they always were
+    private static final SeatLayout.Family LAYOUTS = new SeatLayout.Family(new int[]{2}, 4);
 
     /**
      * Constructs a new {@code Minibus} voyage with specified details. This constructor initializes
@@ -21,6 +23,7 @@ public class Minibus extends Voyage {
      */
     public Minibus(int id, String from, String to, int rows, double price) {
         super(id, from, to, rows);
+        this.price = price;
         initializeSeats(price); // Calls the method to initialize seats with the given price
     }
 
@@ -42,9 +45,6 @@ public class Minibus extends Voyage {
      */
     @Override
     protected void initializeSeats(double price) {
-        for (int i = 1; i <= this.rows * 4; i++) { // Iterates to create seats based on the number of rows * 4
-            boolean isPremium = false; // Minibus does not use premium seats in this context
-            seats.add(new Seat(i, isPremium, price)); // Adds a new seat to the list
-        }
+        layout = LAYOUTS.withRows(rows); // Minibus does not use premium seats in this context
     }
 }
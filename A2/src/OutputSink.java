@@ -0,0 +1,114 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * The {@code OutputSink} class writes the command log of a run to its final destination through a single
+ * buffered writer that stays open for the whole run.
+ *
+ * <p>Output is written in its final form as it arrives: every line is trimmed, empty lines are dropped and lines
+ * are separated by a single newline with none after the last one. This is the same form the booking system used to
+ * produce by reading the log back and rewriting it after the run. Content is only guaranteed to reach the file
+ * at the flush points, {@link #flush()} and {@link #close()}.
+ */
+public class OutputSink implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedWriter writer;
+    private char[] pendingLine = new char[256]; // The unfinished last line, not yet written
+    private int pendingLength = 0;
+    private boolean firstLine = true;
+
+    /**
+     * Constructs an {@code OutputSink} that replaces the contents of the file at the given path.
+     *
+     * @param path Path of the output file.
+     * @throws IOException If the file cannot be opened for writing.
+     */
+    public OutputSink(String path) throws IOException {
+        this(new OutputStreamWriter(Files.newOutputStream(Paths.get(path)), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Constructs an {@code OutputSink} that writes to the given writer, such as a {@link java.io.StringWriter} that
+     * keeps the output in memory. The writer is closed with the sink.
+     *
+     * @param destination The writer to write to.
+     */
+    public OutputSink(Writer destination) {
+        writer = new BufferedWriter(destination, BUFFER_SIZE);
+    }
+
+    /**
+     * Writes output to the sink. Lines may span several calls; a line is written once its end is seen.
+     *
+     * @param content Output that is going to be written.
+     * @throws UncheckedIOException If an I/O error occurs.
+     */
+    public synchronized void write(CharSequence content) {
+        try {
+            for (int i = 0; i < content.length(); i++) {
+                char c = content.charAt(i);
+                if (c == '\n' || c == '\r') {
+                    writeLine();
+                } else {
+                    if (pendingLength == pendingLine.length) pendingLine = Arrays.copyOf(pendingLine, 2 * pendingLength);
+                    pendingLine[pendingLength++] = c;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes every complete line written so far to the file.
+     *
+     * @throws UncheckedIOException If an I/O error occurs.
+     */
+    public synchronized void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the unfinished last line, if any, and closes the file.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            writeLine();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the pending line trimmed, unless it is empty after trimming, and starts a new one.
+     */
+    private void writeLine() throws IOException {
+        int start = 0;
+        int end = pendingLength;
+        // Trimming matches String.trim(): every character up to and including the space is whitespace
+        while (start < end && pendingLine[start] <= ' ') start++;
+        while (end > start && pendingLine[end - 1] <= ' ') end--;
+        if (start < end) {
+            if (!firstLine) writer.write('\n');
+            writer.write(pendingLine, start, end - start);
+            firstLine = false;
+        }
+        pendingLength = 0;
+    }
+}
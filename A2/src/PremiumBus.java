@@ -7,6 +7,8 @@
  * the base price for premium seats.
  */
 public class PremiumBus extends Voyage {
+    // The 1+2 layout: a premium seat, the aisle and a block of two seats, shared by all premium buses
+    private static final SeatLayout.Family LAYOUTS = new SeatLayout.Family(new int[]{1, 2}, 3, 0);
     private double refundCut; // Percentage of the price retained when a refund is issued
     private int premiumFee; // Additional percentage charged on top of the base price for premium seats
 
@@ -25,6 +27,7 @@ public class PremiumBus extends Voyage {
      */
     public PremiumBus(int id, String from, String to, int rows, double price, double refundCut, int premiumFee) {
         super(id, from, to, rows); // Initialize the base class properties
+        this.price = price;
         this.refundCut = refundCut;
         this.premiumFee = premiumFee;
         initializeSeats(price); // Set up seats with differentiated pricing
@@ -51,6 +54,15 @@ public class PremiumBus extends Voyage {
         return refundCut;
     }
 
+    /**
+     * Retrieves the premium fee percentage added to the base price of premium seats.
+     *
+     * @return the premium fee percentage
+     */
+    protected int getPremiumFee() {
+        return premiumFee;
+    }
+
     /**
      * Initializes seats for the premium bus. This method sets up both premium and standard seats,
      * calculating the price for premium seats based on the standard price and premium fee.
@@ -59,14 +71,7 @@ public class PremiumBus extends Voyage {
      */
     @Override
     protected void initializeSeats(double standardPrice) {
-        double premiumPrice = standardPrice + standardPrice * (premiumFee / 100.0); // Calculate the price for premium seats
-        for (int i = 1; i <= rows; i++) {
-            for (int j = 1; j <= 3; j++) {
-                int seatNumber = (i - 1) * 3 + j;
-                boolean isPremium = (j == 1); // First seat in each group is premium
-                double price = isPremium ? premiumPrice : standardPrice;
-                seats.add(new Seat(seatNumber, isPremium, price));
-            }
-        }
+        premiumPrice = standardPrice + standardPrice * (premiumFee / 100.0); // Calculate the price for premium seats
+        layout = LAYOUTS.withRows(rows);
     }
 }
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The {@code RouteIndex} class is a secondary index of voyages by route, so the voyages between two places are
+ * found without looking at any other voyage. A voyage is indexed under every pair of its stops that it travels
+ * between, in order: a voyage without stops only under its starting point and destination, and a voyage from A over
+ * B to C under A to B, A to C and B to C.
+ *
+ * <p>Under each pair, voyages are kept sorted by ID. The index is thread-safe; adding and removing a voyage should
+ * happen under the voyage's lock, so that its route does not change meanwhile.
+ */
+public class RouteIndex {
+    // Voyages by route key, then by ID; the key is the two stops separated by a tab, which no stop name contains
+    private final Map<String, ConcurrentSkipListMap<Integer, Voyage>> routes = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes a voyage under every pair of its stops. Indexing it again after stops were added to it indexes the
+     * new pairs; the old ones remain valid, as stops never change the starting point or destination.
+     *
+     * @param voyage the voyage
+     */
+    public void add(Voyage voyage) {
+        String[] stops = voyage.getRouteStops();
+        for (int i = 0; i < stops.length - 1; i++) {
+            for (int j = i + 1; j < stops.length; j++) {
+                routes.computeIfAbsent(key(stops[i], stops[j]), k -> new ConcurrentSkipListMap<>())
+                        .put(voyage.getId(), voyage);
+            }
+        }
+    }
+
+    /**
+     * Removes a voyage from the index.
+     *
+     * @param voyage the voyage
+     */
+    public void remove(Voyage voyage) {
+        String[] stops = voyage.getRouteStops();
+        for (int i = 0; i < stops.length - 1; i++) {
+            for (int j = i + 1; j < stops.length; j++) {
+                Map<Integer, Voyage> voyages = routes.get(key(stops[i], stops[j]));
+                if (voyages != null) voyages.remove(voyage.getId(), voyage);
+            }
+        }
+    }
+
+    /**
+     * Returns the voyages that travel from one place to another, directly or with stops in between.
+     *
+     * @param from the place to travel from
+     * @param to   the place to travel to
+     * @return the voyages, sorted by ID
+     */
+    public List<Voyage> find(String from, String to) {
+        Map<Integer, Voyage> voyages = routes.get(key(from, to));
+        return voyages == null ? new ArrayList<>() : new ArrayList<>(voyages.values());
+    }
+
+    /**
+     * Removes every voyage from the index.
+     */
+    public void clear() {
+        routes.clear();
+    }
+
+    private static String key(String from, String to) {
+        return from + '\t' + to;
+    }
+}
@@ -51,6 +51,15 @@ public class Seat {
         isSold = sold;
     }
 
+    /**
+     * Returns whether this seat is a premium seat.
+     *
+     * @return {@code true} if the seat is a premium seat, {@code false} otherwise
+     */
+    public boolean isPremium() {
+        return isPremium;
+    }
+
     /**
      * Returns the price of this seat.
      *
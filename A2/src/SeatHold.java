@@ -0,0 +1,65 @@
+/**
+ * The {@code SeatHold} class represents seats of a voyage held for a client until a deadline, so no one else can buy
+ * them while the client pays. A hold ends when it is confirmed, which sells the seats, when it is released, or when
+ * its deadline passes, which releases it.
+ *
+ * @see Voyage#holdSeats(int[], int, long)
+ */
+public class SeatHold {
+    private final Voyage voyage;
+    private final int id;
+    private final int[] seatNumbers;
+    private final long expiresAtMillis;
+    TimingWheel.Timer<SeatHold> timer; // The expiry timer, once scheduled
+
+    /**
+     * Constructs a new {@code SeatHold}.
+     *
+     * @param voyage          the voyage
+     * @param id              the hold ID, unique within the voyage
+     * @param seatNumbers     the held seat numbers
+     * @param expiresAtMillis the time in milliseconds at which the hold expires
+     */
+    SeatHold(Voyage voyage, int id, int[] seatNumbers, long expiresAtMillis) {
+        this.voyage = voyage;
+        this.id = id;
+        this.seatNumbers = seatNumbers;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /**
+     * Gets the voyage the seats are held on.
+     *
+     * @return the voyage
+     */
+    public Voyage getVoyage() {
+        return voyage;
+    }
+
+    /**
+     * Gets the ID of the hold, which is unique within its voyage.
+     *
+     * @return the hold ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns a copy of the held seat numbers, in the order they were listed.
+     *
+     * @return the seat numbers
+     */
+    public int[] getSeatNumbers() {
+        return seatNumbers.clone();
+    }
+
+    /**
+     * Gets the time at which the hold expires.
+     *
+     * @return the expiry time in milliseconds
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+}
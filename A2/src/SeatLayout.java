@@ -0,0 +1,153 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@code SeatLayout} class describes the seats of a bus: how many there are, how they are numbered into rows and
+ * columns, which of them are premium, and how the seating plan is drawn. Seats are numbered from 1, row by row, and
+ * every row has the same columns, so all of this follows from the row layout of the bus type and the number of rows.
+ *
+ * <p>Layouts are immutable flyweights: there is one per bus type and row count, shared by every voyage with that bus
+ * and that many rows, so a voyage only keeps what is its own, such as its sold seats and prices. Layouts are obtained
+ * from the {@link Family} of their bus type.
+ */
+public final class SeatLayout {
+    private final int rows;
+    private final int seatsPerRow;
+    private final boolean[] premiumColumns; // By column, from 0
+    private final int[] rowBlocks;
+    private final SeatingPlan seatingPlan;
+
+    private SeatLayout(Family family, int rows) {
+        this.rows = rows;
+        this.seatsPerRow = family.seatsPerRow;
+        this.premiumColumns = family.premiumColumns;
+        this.rowBlocks = family.rowBlocks;
+        this.seatingPlan = family.seatingPlan;
+    }
+
+    /**
+     * Gets the number of seat rows.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of seats in a row.
+     *
+     * @return the seats per row
+     */
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    /**
+     * Gets the number of seats, numbered from 1 to this number.
+     *
+     * @return the seat count
+     */
+    public int getSeatCount() {
+        return rows * seatsPerRow;
+    }
+
+    /**
+     * Returns whether there is a seat with the given number.
+     *
+     * @param seatNumber the seat number
+     * @return {@code true} if the seat exists
+     */
+    public boolean hasSeat(int seatNumber) {
+        return seatNumber >= 1 && seatNumber <= getSeatCount();
+    }
+
+    /**
+     * Returns whether a seat is a premium seat, from its column.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return {@code true} if the seat is a premium seat
+     */
+    public boolean isPremium(int seatNumber) {
+        return premiumColumns[(seatNumber - 1) % seatsPerRow];
+    }
+
+    /**
+     * Returns the row of a seat, counted from 1.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return the row
+     */
+    public int getRow(int seatNumber) {
+        return (seatNumber - 1) / seatsPerRow + 1;
+    }
+
+    /**
+     * Returns the column of a seat within its row, counted from 1.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return the column
+     */
+    public int getColumn(int seatNumber) {
+        return (seatNumber - 1) % seatsPerRow + 1;
+    }
+
+    /**
+     * Returns the sizes of the seat blocks in a row, from the first seat of the row to the last, as drawn in the
+     * seating plan.
+     *
+     * @return the block sizes of a row
+     */
+    public int[] getRowBlocks() {
+        return rowBlocks.clone();
+    }
+
+    /**
+     * Returns the compiled seating plan of the row layout.
+     *
+     * @return the seating plan
+     */
+    public SeatingPlan getSeatingPlan() {
+        return seatingPlan;
+    }
+
+    /**
+     * The {@code Family} class is the row layout of a bus type, and hands out the layouts of that type by row count,
+     * creating each one once.
+     */
+    public static final class Family {
+        private final int[] rowBlocks;
+        private final int seatsPerRow;
+        private final boolean[] premiumColumns;
+        private final SeatingPlan seatingPlan;
+        private final Map<Integer, SeatLayout> layouts = new ConcurrentHashMap<>();
+
+        /**
+         * Constructs the row layout of a bus type.
+         *
+         * @param rowBlocks      the sizes of the seat blocks in a row, as drawn in the seating plan
+         * @param seatsPerRow    the number of seats in a row
+         * @param premiumColumns the columns of the premium seats, counted from 0
+         */
+        public Family(int[] rowBlocks, int seatsPerRow, int... premiumColumns) {
+            this.rowBlocks = rowBlocks.clone();
+            this.seatsPerRow = seatsPerRow;
+            this.premiumColumns = new boolean[seatsPerRow];
+            for (int column : premiumColumns) {
+                this.premiumColumns[column] = true;
+            }
+            this.seatingPlan = new SeatingPlan(rowBlocks);
+        }
+
+        /**
+         * Returns the shared layout with the given number of rows.
+         *
+         * @param rows the number of rows
+         * @return the layout
+         */
+        public SeatLayout withRows(int rows) {
+            SeatLayout layout = layouts.get(rows);
+            return layout != null ? layout : layouts.computeIfAbsent(rows, r -> new SeatLayout(this, r));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.BitSet;
+
+/**
+ * The {@code SeatingPlan} class renders the seating plan of a voyage as printed by {@link Voyage#printDetails()}:
+ * one line per row with {@code X} for a sold seat and {@code *} for a free one, seats in the same block separated by
+ * a space and blocks separated by {@code " | "}.
+ *
+ * <p>A plan is compiled once per bus layout from the sizes of its seat blocks into a template of one row, with all
+ * seats free, and the offset of every seat within it. Rendering copies the template into a buffer once per row and
+ * then marks the sold seats straight from the sold-seat bitmap, so it costs no more than the text it produces.
+ * Instances are immutable and shared by all voyages with the same layout; the render buffer is kept per thread.
+ */
+public class SeatingPlan {
+    private static final ThreadLocal<char[]> buffers = ThreadLocal.withInitial(() -> new char[1024]);
+
+    private final char[] rowTemplate; // A row with every seat free, including the line end
+    private final int[] seatOffsets; // The offset in the row of every seat of the row
+    private final int seatsPerRow;
+
+    /**
+     * Compiles the seating plan of a row layout.
+     *
+     * @param blocks the sizes of the seat blocks in a row, from the first seat of the row to the last
+     */
+    public SeatingPlan(int[] blocks) {
+        StringBuilder row = new StringBuilder();
+        int seats = 0;
+        for (int block : blocks) {
+            seats += block;
+        }
+        seatOffsets = new int[seats];
+        int seat = 0;
+        for (int b = 0; b < blocks.length; b++) {
+            if (b > 0) row.append(" | ");
+            for (int s = 0; s < blocks[b]; s++) {
+                if (s > 0) row.append(' ');
+                seatOffsets[seat++] = row.length();
+                row.append('*');
+            }
+        }
+        row.append('\n');
+        rowTemplate = row.toString().toCharArray();
+        seatsPerRow = seats;
+    }
+
+    /**
+     * Returns the number of seats shown in a row.
+     *
+     * @return the seats per row
+     */
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    /**
+     * Appends the seating plan of a voyage. Sold seats past the last row are not shown.
+     *
+     * @param sold the sold seats, where bit n - 1 is set when seat number n is sold
+     * @param rows the number of rows
+     * @param out  the builder to append to
+     */
+    public void render(BitSet sold, int rows, StringBuilder out) {
+        if (rows <= 0) return;
+        int rowLength = rowTemplate.length;
+        int length = rows * rowLength;
+        char[] buffer = buffers.get();
+        if (buffer.length < length) {
+            buffer = new char[Math.max(length, 2 * buffer.length)];
+            buffers.set(buffer);
+        }
+
+        // Fill in the template, doubling the filled part each time
+        System.arraycopy(rowTemplate, 0, buffer, 0, rowLength);
+        for (int filled = rowLength; filled < length; filled *= 2) {
+            System.arraycopy(buffer, 0, buffer, filled, Math.min(filled, length - filled));
+        }
+
+        int shown = rows * seatsPerRow;
+        for (int i = sold.nextSetBit(0); i >= 0 && i < shown; i = sold.nextSetBit(i + 1)) {
+            buffer[(i / seatsPerRow) * rowLength + seatOffsets[i % seatsPerRow]] = 'X';
+        }
+        out.append(buffer, 0, length);
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The {@code SegmentInventory} class keeps the seats of a multi-stop voyage sold for part of its route. The route
+ * is the list of stops from the origin of the voyage to its destination, and a segment is the leg between two
+ * consecutive stops, so a route of n + 1 stops has n segments, numbered from 0.
+ *
+ * <p>Every seat carries a bitmap of its sold segments in a single {@code long}, where bit s is set when segment s is
+ * sold. A ticket from stop o to stop d covers segments o to d - 1, which is a contiguous mask, so whether a seat is
+ * free for a ticket, or holds it for a refund, is one AND of two words however many stops the route has, and a seat
+ * sold from A to B stays free from B on. This limits a route to {@link #MAX_SEGMENTS} segments. A bitmap of the seats
+ * with any segment sold is kept alongside for the seating plan.
+ *
+ * <p>Seats sold for the whole route are not kept here but in the voyage's own sold-seat bitmap; the voyage checks
+ * both. This class is not thread-safe; it is only used under the lock of its voyage.
+ */
+public class SegmentInventory {
+    public static final int MAX_SEGMENTS = Long.SIZE;
+
+    private final String[] route; // The origin, the intermediate stops and the destination
+    private final long[] soldSegments; // Bit s of element n - 1 is set when segment s of seat number n is sold
+    private final BitSet partlySold = new BitSet(); // Bit n - 1 is set when any segment of seat number n is sold
+    private int partlySoldCount; // The number of bits set in partlySold
+
+    /**
+     * Constructs an empty {@code SegmentInventory}.
+     *
+     * @param route     the stops of the route, from the origin to the destination; at least two and at most
+     *                  {@link #MAX_SEGMENTS} + 1
+     * @param seatCount the number of seats
+     * @throws IllegalArgumentException if the route has too few or too many stops
+     */
+    public SegmentInventory(String[] route, int seatCount) {
+        if (route.length < 2 || route.length > MAX_SEGMENTS + 1) {
+            throw new IllegalArgumentException("A route must have 2 to " + (MAX_SEGMENTS + 1) + " stops");
+        }
+        this.route = route.clone();
+        this.soldSegments = new long[Math.max(0, seatCount)];
+    }
+
+    /**
+     * Returns the number of segments of the route.
+     *
+     * @return the segment count
+     */
+    public int getSegmentCount() {
+        return route.length - 1;
+    }
+
+    /**
+     * Returns the intermediate stops of the route, without the origin and the destination.
+     *
+     * @return the intermediate stops
+     */
+    public String[] getStops() {
+        String[] stops = new String[route.length - 2];
+        System.arraycopy(route, 1, stops, 0, stops.length);
+        return stops;
+    }
+
+    /**
+     * Returns the route as its stops separated by {@code -}.
+     *
+     * @return the route
+     */
+    public String getRoute() {
+        return String.join("-", route);
+    }
+
+    /**
+     * Returns the index of the stop a ticket can start at. A stop visited more than once is taken at its first visit.
+     *
+     * @param stop the stop name
+     * @return the index of the stop in the route, or -1 if no segment starts there
+     */
+    public int originIndex(String stop) {
+        for (int i = 0; i < route.length - 1; i++) {
+            if (route[i].equals(stop)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the stop a ticket can end at. A stop visited more than once is taken at its last visit.
+     *
+     * @param stop the stop name
+     * @return the index of the stop in the route, or -1 if no segment ends there
+     */
+    public int destinationIndex(String stop) {
+        for (int i = route.length - 1; i > 0; i--) {
+            if (route[i].equals(stop)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bitmap of the segments a ticket between two stops covers.
+     *
+     * @param origin      the index of the origin stop
+     * @param destination the index of the destination stop, greater than {@code origin}
+     * @return the segment mask
+     */
+    public static long mask(int origin, int destination) {
+        long upTo = destination == MAX_SEGMENTS ? -1L : (1L << destination) - 1;
+        return upTo & (-1L << origin);
+    }
+
+    /**
+     * Returns whether none of the given segments of a seat is sold.
+     *
+     * @param seatNumber the number of an existing seat
+     * @param mask       the segments, as returned by {@link #mask(int, int)}
+     * @return {@code true} if the seat is free on all of them
+     */
+    public boolean isFree(int seatNumber, long mask) {
+        return (soldSegments[seatNumber - 1] & mask) == 0;
+    }
+
+    /**
+     * Returns whether all of the given segments of a seat are sold.
+     *
+     * @param seatNumber the number of an existing seat
+     * @param mask       the segments, as returned by {@link #mask(int, int)}
+     * @return {@code true} if the seat is sold on all of them
+     */
+    public boolean isSold(int seatNumber, long mask) {
+        return (soldSegments[seatNumber - 1] & mask) == mask;
+    }
+
+    /**
+     * Returns whether any segment of a seat is sold.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return {@code true} if the seat is partly sold
+     */
+    public boolean isPartlySold(int seatNumber) {
+        return soldSegments[seatNumber - 1] != 0;
+    }
+
+    /**
+     * Returns the number of sold segments of a seat.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return the sold segment count
+     */
+    public int getSoldSegmentCount(int seatNumber) {
+        return Long.bitCount(soldSegments[seatNumber - 1]);
+    }
+
+    /**
+     * Marks segments of a seat as sold.
+     *
+     * @param seatNumber the number of an existing seat
+     * @param mask       the segments
+     */
+    public void sell(int seatNumber, long mask) {
+        if (soldSegments[seatNumber - 1] == 0) partlySoldCount++;
+        soldSegments[seatNumber - 1] |= mask;
+        partlySold.set(seatNumber - 1);
+    }
+
+    /**
+     * Marks segments of a seat as free.
+     *
+     * @param seatNumber the number of an existing seat
+     * @param mask       the segments
+     */
+    public void refund(int seatNumber, long mask) {
+        long before = soldSegments[seatNumber - 1];
+        long remaining = before & ~mask;
+        soldSegments[seatNumber - 1] = remaining;
+        if (remaining == 0 && before != 0) {
+            partlySold.clear(seatNumber - 1);
+            partlySoldCount--;
+        }
+    }
+
+    /**
+     * Returns whether no segment of any seat is sold.
+     *
+     * @return {@code true} if the inventory is empty
+     */
+    public boolean isEmpty() {
+        return partlySold.isEmpty();
+    }
+
+    /**
+     * Returns the number of seats with any segment sold.
+     *
+     * @return the partly sold seat count
+     */
+    public int getPartlySoldCount() {
+        return partlySoldCount;
+    }
+
+    /**
+     * Counts the partly sold seats that are free on all of the given segments. Only partly sold seats are visited.
+     *
+     * @param mask the segments, as returned by {@link #mask(int, int)}
+     * @return the number of partly sold seats free on the segments
+     */
+    public int countPartlySoldFree(long mask) {
+        int free = 0;
+        for (int i = partlySold.nextSetBit(0); i >= 0; i = partlySold.nextSetBit(i + 1)) {
+            if ((soldSegments[i] & mask) == 0) free++;
+        }
+        return free;
+    }
+
+    /**
+     * Returns the seats with any segment sold, where bit n - 1 is set for seat number n. The bitmap is live and must
+     * not be changed.
+     *
+     * @return the partly sold seats
+     */
+    public BitSet getPartlySold() {
+        return partlySold;
+    }
+
+    /**
+     * Returns a copy of the sold segments of every seat, where element n - 1 is the bitmap of seat number n.
+     *
+     * @return the sold segments
+     */
+    public long[] getSoldSegments() {
+        return soldSegments.clone();
+    }
+
+    /**
+     * Restores the sold segments of every seat from a snapshot. Bitmaps of seats the voyage does not have are ignored.
+     *
+     * @param sold the sold segments, where element n - 1 is the bitmap of seat number n
+     */
+    public void restore(long[] sold) {
+        long valid = mask(0, getSegmentCount());
+        for (int i = 0; i < Math.min(sold.length, soldSegments.length); i++) {
+            soldSegments[i] = sold[i] & valid;
+            if (soldSegments[i] != 0 && !partlySold.get(i)) {
+                partlySold.set(i);
+                partlySoldCount++;
+            }
+        }
+    }
+
+    /**
+     * Frees every segment of every seat.
+     */
+    public void clear() {
+        Arrays.fill(soldSegments, 0L);
+        partlySold.clear();
+        partlySoldCount = 0;
+    }
+}
@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code ShardedCommandRunner} class runs a batch of commands on several worker threads while producing exactly
+ * the output of running them one by one through {@link VoyageManager#input(String)} of the same manager.
+ *
+ * <p>Commands on different voyages are independent, so every command is assigned to a worker by its voyage ID and
+ * each worker runs its commands in input order; commands on the same voyage therefore keep their order. Z_REPORT,
+ * SEARCH_VOYAGES and INIT_VOYAGES work on many voyages, so they act as barriers: the commands before one are finished
+ * and written first, and it runs alone. Between barriers the commands run in windows of bounded size; the outputs of a window are kept per
+ * command and written in input order once the window is done.
+ *
+ * <p>A command fails when a field it reads is missing or not a number, so every command is checked before it is
+ * dispatched, and one that would fail acts as a barrier too: the commands before it are finished and written, then it
+ * runs alone and its exception is rethrown with their output written, as in sequential processing. No command after
+ * it runs, so no later state change is made or journaled. Should a command that passed the check still throw, the
+ * workers stop before running any command after it and the window ends the same way.
+ */
+public class ShardedCommandRunner {
+    private static final int WINDOW_SIZE = 1 << 16;
+
+    private final VoyageManager manager;
+    private final int workers;
+    private final CommandDecoder decoder = new CommandDecoder();
+
+    /**
+     * Constructs a {@code ShardedCommandRunner} with the given number of worker threads.
+     *
+     * @param manager the manager that runs the commands and writes their output
+     * @param workers the number of worker threads
+     */
+    public ShardedCommandRunner(VoyageManager manager, int workers) {
+        this.manager = manager;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Runs the commands and writes their output through the manager.
+     *
+     * @param commands the commands, in input order
+     * @throws RuntimeException the first exception thrown by a command, in input order
+     */
+    public void run(String[] commands) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers, task -> {
+            Thread thread = new Thread(task, "booking-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int start = 0;
+            while (start < commands.length) {
+                if (runsAlone(commands[start])) {
+                    manager.input(commands[start]);
+                    start++;
+                    continue;
+                }
+                int end = start;
+                while (end < commands.length && end - start < WINDOW_SIZE && !runsAlone(commands[end])) {
+                    end++;
+                }
+                runWindow(executor, commands, start, end);
+                start = end;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the commands in [start, end) on the workers and writes their output in order.
+     */
+    private void runWindow(ExecutorService executor, String[] commands, int start, int end) {
+        int size = end - start;
+        StringBuilder[] outputs = new StringBuilder[size];
+        RuntimeException[] failures = new RuntimeException[size];
+        AtomicInteger firstFailure = new AtomicInteger(size);
+
+        // Assign each command to the worker of its voyage, keeping input order within a worker
+        int[][] shards = new int[workers][];
+        int[] shardSizes = new int[workers];
+        int[] shardOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            shardOf[i] = Math.floorMod(voyageId(commands[start + i]), workers);
+            shardSizes[shardOf[i]]++;
+        }
+        for (int w = 0; w < workers; w++) {
+            shards[w] = new int[shardSizes[w]];
+            shardSizes[w] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            shards[shardOf[i]][shardSizes[shardOf[i]]++] = i;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(workers);
+        for (int[] shard : shards) {
+            if (shard.length == 0) continue;
+            futures.add(executor.submit(() -> {
+                for (int i : shard) {
+                    if (i > firstFailure.get()) return; // An earlier command failed, so this one must not run
+                    StringBuilder out = new StringBuilder();
+                    outputs[i] = out;
+                    try {
+                        manager.process(commands[start + i], out);
+                    } catch (RuntimeException e) {
+                        failures[i] = e;
+                        firstFailure.accumulateAndGet(i, Math::min);
+                        return; // Like sequential processing, a worker stops at its first failure
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while running commands", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Command worker failed", e.getCause());
+            }
+        }
+
+        // Merge in input order, up to and including the first failure
+        StringBuilder merged = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            merged.append(outputs[i]);
+            if (failures[i] != null) {
+                manager.writeOutput(merged, false);
+                throw failures[i];
+            }
+        }
+        manager.writeOutput(merged, false);
+    }
+
+    /**
+     * Returns whether a command must run alone, because it works on many voyages or would fail.
+     */
+    private boolean runsAlone(String command) {
+        return isBarrier(command) || !parses(command);
+    }
+
+    /**
+     * Returns whether every field a command reads is present and parses as it is parsed by
+     * {@link VoyageManager#input(String)}, so the command cannot throw. The check is conservative: a field is required
+     * to parse even if the command would report an error before reading it.
+     */
+    private boolean parses(String command) {
+        CommandDecoder fields = decoder;
+        fields.reset(command);
+        int count = fields.fieldCount();
+        try {
+            if (fields.fieldEquals(0, "SELL_TICKET") || fields.fieldEquals(0, "REFUND_TICKET")) {
+                fields.intField(1);
+                if (count >= 3) fields.parseSeats(2);
+            } else if (fields.fieldEquals(0, "INIT_VOYAGE")) {
+                return initVoyageParses(command.split("\t"));
+            } else if (fields.fieldEquals(0, "SELL_BEST_SEATS")) {
+                if (count == 3) {
+                    fields.intField(1);
+                    fields.intField(2);
+                }
+            } else if (fields.fieldEquals(0, "PRINT_VOYAGE") || fields.fieldEquals(0, "CANCEL_VOYAGE")) {
+                if (count == 2) fields.intField(1);
+            } else if (fields.fieldEquals(0, "ADD_STOPS")) {
+                if (count == 3) fields.intField(1);
+            } else if (fields.fieldEquals(0, "SELL_SEGMENT") || fields.fieldEquals(0, "REFUND_SEGMENT")) {
+                if (count == 5) {
+                    fields.intField(1);
+                    fields.parseSeats(4);
+                }
+            } else if (fields.fieldEquals(0, "HOLD_TICKET")) {
+                if (count == 3 || count == 4) {
+                    fields.intField(1);
+                    fields.parseSeats(2);
+                    if (count == 4) fields.intField(3);
+                }
+            } else if (fields.fieldEquals(0, "CONFIRM_TICKET") || fields.fieldEquals(0, "RELEASE_TICKET")) {
+                if (count == 3) {
+                    fields.intField(1);
+                    fields.intField(2);
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the fields of an INIT_VOYAGE command parse. A standard voyage with a negative refund cut goes
+     * on to be sold as a SELL_TICKET command, which fails on the bus type, so it does not pass.
+     */
+    private static boolean initVoyageParses(String[] fields) {
+        if (fields.length < 7) return false;
+        try {
+            Integer.parseInt(fields[2]);
+            Integer.parseInt(fields[5]);
+            Double.parseDouble(fields[6]);
+            switch (fields[1]) {
+                case "Standard":
+                    return fields.length >= 8 && Integer.parseInt(fields[7]) >= 0;
+                case "Premium":
+                    if (fields.length < 9) return false;
+                    Integer.parseInt(fields[7]);
+                    Integer.parseInt(fields[8]);
+                    return true;
+                default:
+                    return true;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether a command works on many voyages and must run alone.
+     */
+    private static boolean isBarrier(String command) {
+        return command.startsWith("Z_REPORT") || command.startsWith("SEARCH_VOYAGES")
+                || command.startsWith("INIT_VOYAGES");
+    }
+
+    /**
+     * Returns the voyage ID a command works on, or 0 if it has none that can be parsed. Commands without an ID
+     * either fail or only print an error, so any worker can run them.
+     */
+    private static int voyageId(String command) {
+        int first = command.indexOf('\t');
+        if (first < 0) return 0;
+        int second = command.indexOf('\t', first + 1);
+        if (command.startsWith("INIT_VOYAGE\t")) {
+            // INIT_VOYAGE <type> <id> ...
+            if (second < 0) return 0;
+            first = second;
+            second = command.indexOf('\t', first + 1);
+        }
+        String field = command.substring(first + 1, second < 0 ? command.length() : second);
+        try {
+            return Integer.parseInt(field);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -7,6 +7,8 @@
  * that is retained in case of a refund.
  */
 public class StandardBus extends Voyage {
+    // The 2+2 layout: two blocks of two seats with the aisle between them, shared by all standard buses
+    private static final SeatLayout.Family LAYOUTS = new SeatLayout.Family(new int[]{2, 2}, 4);
     private double refundCut; // Percentage of the price retained when a refund is issued
 
     /**
@@ -23,6 +25,7 @@ public class StandardBus extends Voyage {
      */
     public StandardBus(int id, String from, String to, int rows, double price, double refundCut) {
         super(id, from, to, rows); // Initialize the base class properties
+        this.price = price;
         this.refundCut = refundCut;
         initializeSeats(price); // Set up uniform seat pricing
     }
@@ -56,9 +59,6 @@ public class StandardBus extends Voyage {
      */
     @Override
     protected void initializeSeats(double price) {
-        for (int i = 1; i <= this.rows * 4; i++) { // Iterates to create seats based on the number of rows * 4
-            boolean isPremium = false; // All seats in a standard bus are non-premium
-            seats.add(new Seat(i, isPremium, price)); // Adds new seats with uniform pricing
-        }
+        layout = LAYOUTS.withRows(rows); // Four non-premium seats per row, all at the uniform price
     }
 }
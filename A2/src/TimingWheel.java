@@ -0,0 +1,183 @@
+import java.util.function.Consumer;
+
+/**
+ * The {@code TimingWheel} class schedules values to expire at a deadline, as a hierarchical timing wheel. Time is
+ * divided into ticks of a fixed length, and every level of the wheel is a ring of 64 slots: a slot of level 0 spans
+ * one tick, a slot of level 1 spans 64 ticks, and so on. A timer goes into the slot of the lowest level whose range
+ * reaches its deadline; whenever level 0 wraps around, the next slot of level 1 is emptied into the levels below, and
+ * so on up the wheel.
+ *
+ * <p>Scheduling and cancelling a timer take constant time, since every slot is a doubly linked list. A timer is moved
+ * down at most once per level before it expires, so expiry costs amortized constant time per timer, however many
+ * timers are pending; nothing is ever scanned for deadlines. Deadlines are rounded up to whole ticks, so a timer
+ * expires at most one tick late and never early. Deadlines beyond the range of the top level are parked in its
+ * furthest slot and placed again when it comes around.
+ *
+ * <p>This class is not thread-safe.
+ *
+ * @param <T> the type of the scheduled values
+ */
+public class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4; // 2^24 ticks, over 19 days with 100 ms ticks
+
+    private final long tickMillis;
+    private final Timer<T>[][] slots; // The sentinel of every slot's list, by level and slot
+    private long currentTick; // Every timer due at or before this tick has expired
+    private int size;
+
+    /**
+     * Constructs an empty {@code TimingWheel}.
+     *
+     * @param tickMillis the length of a tick in milliseconds
+     * @param nowMillis  the current time in milliseconds
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimingWheel(long tickMillis, long nowMillis) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("The tick must be positive");
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        slots = new Timer[LEVELS][SLOTS];
+        for (Timer<T>[] level : slots) {
+            for (int s = 0; s < SLOTS; s++) {
+                Timer<T> sentinel = new Timer<>(null, 0);
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                level[s] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedules a value to expire at a deadline.
+     *
+     * @param value          the value
+     * @param deadlineMillis the time in milliseconds at which the value expires
+     * @return the timer, which can be cancelled
+     */
+    public Timer<T> schedule(T value, long deadlineMillis) {
+        // Round up, so a timer never fires before its deadline
+        long tick = deadlineMillis / tickMillis + (deadlineMillis % tickMillis > 0 ? 1 : 0);
+        // A deadline that has passed expires on the next tick
+        Timer<T> timer = new Timer<>(value, Math.max(tick, currentTick + 1));
+        insert(timer);
+        size++;
+        return timer;
+    }
+
+    /**
+     * Cancels a timer, unless it has expired or been cancelled already.
+     *
+     * @param timer the timer
+     * @return {@code true} if the timer was pending
+     */
+    public boolean cancel(Timer<T> timer) {
+        if (timer.next == null) return false;
+        unlink(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to the current time and hands every value that expired on the way to a consumer,
+     * in the order of their deadlines to the tick.
+     *
+     * @param nowMillis the current time in milliseconds; the wheel never moves back
+     * @param expired   the consumer of expired values
+     */
+    public void advance(long nowMillis, Consumer<? super T> expired) {
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            if (size == 0) {
+                currentTick = target; // Nothing to expire on the way
+                break;
+            }
+            long tick = ++currentTick;
+            // Empty the next slot of every level that has just come around, from the top down
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(slots[level][(int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1)]);
+                }
+            }
+            Timer<T> sentinel = slots[0][(int) tick & (SLOTS - 1)];
+            while (sentinel.next != sentinel) {
+                Timer<T> timer = sentinel.next;
+                unlink(timer);
+                size--;
+                expired.accept(timer.value);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of pending timers.
+     *
+     * @return the timer count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Places the timers of a slot again, each in the lowest level that reaches its deadline from the current tick.
+     */
+    private void cascade(Timer<T> sentinel) {
+        while (sentinel.next != sentinel) {
+            Timer<T> timer = sentinel.next;
+            unlink(timer);
+            insert(timer);
+        }
+    }
+
+    private void insert(Timer<T> timer) {
+        // While cascading, a timer due at the current tick goes into the level 0 slot about to expire
+        long delta = Math.max(timer.tick - currentTick, 0);
+        long tick = currentTick + delta;
+        int level = 0;
+        while (level < LEVELS - 1 && (delta >>> (SLOT_BITS * (level + 1))) != 0) {
+            level++;
+        }
+        if ((delta >>> (SLOT_BITS * LEVELS)) != 0) {
+            tick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1; // Parked until the top level comes around
+        }
+        Timer<T> sentinel = slots[level][(int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1)];
+        timer.previous = sentinel.previous;
+        timer.next = sentinel;
+        sentinel.previous.next = timer;
+        sentinel.previous = timer;
+    }
+
+    private void unlink(Timer<T> timer) {
+        timer.previous.next = timer.next;
+        timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+    }
+
+    /**
+     * A scheduled value, which can be cancelled until it expires.
+     *
+     * @param <T> the type of the value
+     */
+    public static class Timer<T> {
+        private final T value;
+        private final long tick; // The tick at which the timer expires
+        private Timer<T> previous;
+        private Timer<T> next; // Null once the timer has expired or been cancelled
+
+        private Timer(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+
+        /**
+         * Returns the scheduled value.
+         *
+         * @return the value
+         */
+        public T getValue() {
+            return value;
+        }
+    }
+}
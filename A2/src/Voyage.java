@@ -1,19 +1,53 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The abstract {@code Voyage} class represents a general voyage entity for a transportation system.
  * This class defines the structure and capabilities that all specific types of voyages must implement,
  * including initializing seats, managing ticket sales, refunds, and calculating revenues.
  * Different types of voyages (like standard bus, premium bus, and minibus) will extend this class.
+ *
+ * <p>Seats are not stored as objects. The numbering, classes and plan of the seats are those of a shared
+ * {@link SeatLayout}, and a voyage only keeps the sold seats as a bitmap and one price per seat class, since all
+ * regular seats of a voyage cost the same and so do all premium ones. {@code Seat} objects are only created on demand
+ * by {@link #getSeat(int)}.
+ *
+ * <p>A voyage may stop on the way, dividing its route into segments, and a seat can then be sold for part of the
+ * route only, leaving it free for the rest. Such sales are kept in a {@link SegmentInventory}; a seat sold for the
+ * whole route with {@link #sellSeats(int[], int)} is taken on every segment.
+ *
+ * <p>Seats can also be held for a while before they are paid for, with {@link #holdSeats(int[], int, long)}. A held
+ * seat cannot be sold or held by anyone else; it is sold when its hold is confirmed and free again when the hold is
+ * released. The voyage does not watch the time itself: expired holds are released by whoever schedules them.
  */
 public abstract class Voyage {
     protected int id;
     protected String from;
     protected String to;
     protected int rows; // Note: This might be used differently based on the type of bus
-    protected List<Seat> seats = new ArrayList<>();
+    protected SeatLayout layout; // Shared by all voyages with the same bus and rows; set by initializeSeats
+    protected BitSet soldSeats = new BitSet(); // Bit n - 1 is set when seat number n is sold
     protected double totalCut = 0.0; // To track the total cut from the refund to add back to revenue
+    protected boolean cancelled = false; // Set once the voyage is cancelled; a cancelled voyage takes no more commands
+    protected double price; // The base seat price the voyage was initialized with
+    protected double premiumPrice; // The price of premium seats, for voyages that have them
+    protected int soldRegularSeats = 0; // Running count of sold non-premium seats
+    protected int soldPremiumSeats = 0; // Running count of sold premium seats
+    protected String reportSection; // Cached details and revenue, rendered again only when dirty
+    protected boolean dirty = true; // Set whenever seats or revenue change
+    protected SegmentInventory segments; // Seats sold for part of the route; null until the first such sale or stop
+    protected double segmentRevenue = 0.0; // Fares of the seats sold for part of the route
+    protected BitSet heldSeats = new BitSet(); // Bit n - 1 is set when seat number n is held
+    protected int heldSeatCount = 0; // Running count of held seats
+    protected Map<Integer, SeatHold> holds; // Pending holds by ID; null until the first hold
+    protected int nextHoldId = 1;
+
+    private static volatile boolean revenueCheck = Boolean.getBoolean("booking.checkRevenue");
+    protected long journalSequence = 0; // Sequence number of the last journal record applied to this voyage
 
     /**
      * Constructs a new Voyage with specified details.
@@ -31,12 +65,43 @@ public abstract class Voyage {
           }
 
     /**
-     * Initializes seats within the voyage. Specific seat configuration is defined in subclasses.
+     * Initializes seats within the voyage by setting the seat layout and seat class prices. Specific seat
+     * configuration is defined in subclasses.
      *
      * @param price the base price for seats
      */
     protected abstract void initializeSeats(double price);
 
+    /**
+     * Returns whether a seat is a premium seat, from the seat layout.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return {@code true} if the seat is a premium seat
+     */
+    protected boolean isPremiumSeat(int seatNumber) {
+        return layout.isPremium(seatNumber);
+    }
+
+    /**
+     * Returns the price of a seat from the price of its class.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return the price of the seat
+     */
+    protected double getSeatPrice(int seatNumber) {
+        return isPremiumSeat(seatNumber) ? premiumPrice : price;
+    }
+
+    /**
+     * Returns whether the voyage has a seat with the given number.
+     *
+     * @param seatNumber the seat number
+     * @return {@code true} if the seat exists
+     */
+    protected boolean hasSeat(int seatNumber) {
+        return layout.hasSeat(seatNumber);
+    }
+
     /**
      * Returns the type of bus as a string. Must be implemented by subclasses to specify the bus type.
      *
@@ -44,6 +109,52 @@ public abstract class Voyage {
      */
     public abstract String getBusType();
 
+    /**
+     * Returns the sizes of the seat blocks in a row, from the first seat of the row to the last, as laid out
+     * by {@link #printDetails()}. Seats in the same block are side by side; blocks are separated by the aisle.
+     *
+     * @return the block sizes of a row
+     */
+    protected int[] getRowBlocks() {
+        return layout.getRowBlocks();
+    }
+
+    /**
+     * Returns the compiled seating plan of the bus layout, shared by all voyages of the same type.
+     *
+     * @return the seating plan
+     */
+    protected SeatingPlan getSeatingPlan() {
+        return layout.getSeatingPlan();
+    }
+
+    /**
+     * Gets the seat layout of the voyage.
+     *
+     * @return the seat layout
+     */
+    public SeatLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Finds the best free seats for a party sitting together, without selling them.
+     *
+     * @param count the number of seats wanted
+     * @return the seat numbers in increasing order, or an empty list if the party cannot sit together
+     * @see BestSeatFinder
+     */
+    public synchronized List<Integer> findBestSeats(int count) {
+        List<Integer> seatNumbers = new ArrayList<>(Math.max(0, count));
+        int first = BestSeatFinder.find(occupiedSeats(), rows, getRowBlocks(), count);
+        if (first > 0) {
+            for (int i = 0; i < count; i++) {
+                seatNumbers.add(first + i);
+            }
+        }
+        return seatNumbers;
+    }
+
     /**
      * Attempts to sell tickets for a list of specified seat numbers.
      * Checks seat validity and availability before processing the sale.
@@ -51,145 +162,552 @@ public abstract class Voyage {
      * @param seatNumbers the list of seat numbers to sell
      * @return a {@code ticketSaleResult} indicating success or failure, including total price if successful or error message if failed.
      */
-    public ticketSaleResult sellTickets(List<Integer> seatNumbers) {
-        double totalPrice = 0.0;
+    public synchronized ticketSaleResult sellTickets(List<Integer> seatNumbers) {
+        int[] seatArray = toArray(seatNumbers);
+        double totalPrice = sellSeats(seatArray, seatArray.length);
+
+        if (totalPrice == -4.0) {
+            return new ticketSaleResult(String.format("ERROR: There is no voyage with ID of %d!", id));
+        } else if (totalPrice == -2.0) {
+            return new ticketSaleResult("ERROR: " + firstNonPositive(seatArray, seatArray.length) +
+                    " is not a positive integer, seat number must be a positive integer!");
+        } else if (totalPrice == -3.0) {
+            return new ticketSaleResult("ERROR: There is no such a seat!");
+        } else if (totalPrice == -1.0) {
+            return new ticketSaleResult("ERROR: One or more seats already sold!");
+        }
+        return new ticketSaleResult(totalPrice);
+    }
+
+    /**
+     * Attempts to sell the seats in a buffer, all or nothing. Seats are checked in order, and the first one that
+     * is not positive, does not exist or is already sold fails the sale. This method allocates nothing.
+     *
+     * @param seatNumbers the buffer holding the seat numbers to sell
+     * @param count       the number of seat numbers in the buffer
+     * @return the total price, or a negative value indicating specific errors: -1 if a seat is already sold,
+     * -2 if a seat number is not positive (the first such seat is given by {@link #firstNonPositive(int[], int)}),
+     * -3 if a seat does not exist and -4 if the voyage was cancelled
+     */
+    public synchronized double sellSeats(int[] seatNumbers, int count) {
+        if (cancelled) {
+            return -4.0;
+        }
 
         // Check if all specified seats are valid and available
-        for (int seatNumber : seatNumbers) {
+        double totalPrice = 0.0;
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
             if (seatNumber <= 0) {
-                return new ticketSaleResult("ERROR: "+ seatNumber +
-                        " is not a positive integer, seat number must be a positive integer!");
+                return -2.0;
             }
-            Seat seat = seats.stream()
-                    .filter(s -> s.getSeatNumber() == seatNumber)
-                    .findFirst()
-                    .orElse(null);
-            if (seat == null) {
-                return new ticketSaleResult("ERROR: There is no such a seat!");
-            } else if (seat.isSold()) {
-                return new ticketSaleResult("ERROR: One or more seats already sold!");
+            if (!hasSeat(seatNumber)) {
+                return -3.0;
+            } else if (isTaken(seatNumber)) {
+                return -1.0;
             }
-            totalPrice += seat.getPrice();
+            totalPrice += getSeatPrice(seatNumber);
         }
 
         // If all seats are available, sell them
-        seatNumbers.forEach(seatNumber -> seats.stream()
-                .filter(seat -> seat.getSeatNumber() == seatNumber)
-                .findFirst()
-                .ifPresent(seat -> seat.setSold(true)));
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            if (soldSeats.get(seatNumber - 1)) continue; // A seat listed twice is only counted once
+            soldSeats.set(seatNumber - 1);
+            countSeat(seatNumber, 1);
+        }
+        dirty = true;
 
-        return new ticketSaleResult(totalPrice);
+        return totalPrice;
     }
 
     /**
      * Processes ticket refunds for specified seat numbers. Validates that each seat is sold before refunding.
+     * A seat listed twice counts as already empty the second time.
      *
      * @param seatNumbers the list of seat numbers to refund
      * @return the total refund amount, or a negative value indicating specific errors
      */
-    public double refundTickets(List<Integer> seatNumbers) {
-
-        boolean negativeSeatNumber = seatNumbers.stream().anyMatch(seatNumber -> seatNumber <= 0);
-        if (negativeSeatNumber) {
-            return -2.0; // Indicates a negative seat number
-        }
-
-        boolean invalidSeatNumber = seatNumbers.stream()
-                .anyMatch(seatNumber -> seats.stream()
-                        .noneMatch(seat -> seat.getSeatNumber() == seatNumber));
-        if (invalidSeatNumber) {
-            return -3.0; // Indicates that one or more seats don't exist
-        }
+    public synchronized double refundTickets(List<Integer> seatNumbers) {
+        int[] seatArray = toArray(seatNumbers);
+        return refundSeats(seatArray, seatArray.length);
+    }
 
-        boolean allSeatsSold = seatNumbers.stream()
-                .allMatch(seatNumber -> seats.stream()
-                        .anyMatch(seat -> seat.getSeatNumber() == seatNumber && seat.isSold()));
+    /**
+     * Refunds the seats in a buffer, all or nothing, like {@link #refundTickets(List)}. This method allocates nothing.
+     *
+     * <p>Seats are validated and refunded in a single pass over the list, straight against the sold-seat bitmap: a
+     * seat listed twice is found empty the second time, as it was refunded the first. When a seat fails, the seats
+     * refunded so far are sold again, and the rest of the list is only checked for errors that take precedence: a
+     * seat number that is not positive over a seat that does not exist, and both over a seat that is not sold.
+     *
+     * @param seatNumbers the buffer holding the seat numbers to refund
+     * @param count       the number of seat numbers in the buffer
+     * @return the total refund amount, or a negative value indicating specific errors: -1 if a seat is not sold
+     * or listed twice, -2 if a seat number is not positive, -3 if a seat does not exist and -4 if the voyage was
+     * cancelled
+     */
+    public synchronized double refundSeats(int[] seatNumbers, int count) {
 
-        if (!allSeatsSold) {
-            return -1.0; // Indicates that one or more seats aren't sold
+        if (cancelled) {
+            return -4.0; // Indicates that the voyage was cancelled
         }
 
         double totalRefund = 0.0;
+        double cutBefore = totalCut;
+        double error = 0.0; // The error found so far, if any; seats are no longer refunded once there is one
+        int refunded = 0;
 
-        // Iterate over each specified seat number
-        for (int seatNumber : seatNumbers) {
-            Seat seat = seats.stream()
-                    .filter(s -> s.getSeatNumber() == seatNumber && s.isSold())
-                    .findFirst()
-                    .orElse(null);
-
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            if (seatNumber <= 0) {
+                error = -2.0; // Indicates a negative seat number, which no other error overrides
+                break;
+            }
+            if (!hasSeat(seatNumber)) {
+                error = -3.0; // Indicates that one or more seats don't exist
+            } else if (error == 0.0 && !soldSeats.get(seatNumber - 1)) {
+                error = -1.0; // Indicates that one or more seats aren't sold
+            }
+            if (error != 0.0) continue;
 
-            double refundAmount = seat.getPrice() * (1 - getRefundCut() / 100.0);
+            double refundAmount = getSeatPrice(seatNumber) * (1 - getRefundCut() / 100.0);
             totalRefund += refundAmount;
 
-            double originalPrice = seat.getPrice();
+            double originalPrice = getSeatPrice(seatNumber);
 
             double cutAmount = originalPrice - refundAmount; // The cut from the original price
             totalCut += cutAmount;
 
             // Mark the seat as not sold
-            seat.setSold(false);
+            soldSeats.clear(seatNumber - 1);
+            countSeat(seatNumber, -1);
+            refunded++;
         }
 
+        if (error != 0.0) {
+            // Sell the seats refunded before the error again; none of them was listed twice
+            for (int i = 0; i < refunded; i++) {
+                soldSeats.set(seatNumbers[i] - 1);
+                countSeat(seatNumbers[i], 1);
+            }
+            totalCut = cutBefore;
+            return error;
+        }
+        dirty = true;
+
         // Return the total refund amount
         return totalRefund;
     }
 
+    /**
+     * Divides the route of the voyage into segments at the given stops, so that seats can be sold for part of it with
+     * {@link #sellSegment(int, int, int[], int)}. Stops can only be added once, and not after a seat is sold. A route
+     * visits every place once, so a stop may not be listed twice or be the starting point or destination.
+     *
+     * @param stops the intermediate stops, in the order the voyage visits them
+     * @return 0 if the stops were added, or a negative value indicating specific errors: -1 if the voyage already
+     * has stops, -2 if a seat is sold, -3 if there are too many stops, -4 if the voyage was cancelled and -5 if a
+     * stop is repeated or is the starting point or destination
+     */
+    public synchronized int addStops(String[] stops) {
+        if (cancelled) {
+            return -4;
+        }
+        if (segments != null && segments.getSegmentCount() > 1) {
+            return -1;
+        }
+        if (!soldSeats.isEmpty() || !heldSeats.isEmpty() || (segments != null && !segments.isEmpty())) {
+            return -2;
+        }
+        if (stops.length >= SegmentInventory.MAX_SEGMENTS) {
+            return -3;
+        }
+        for (int i = 0; i < stops.length; i++) {
+            if (stops[i].equals(from) || stops[i].equals(to)) {
+                return -5;
+            }
+            for (int j = 0; j < i; j++) {
+                if (stops[j].equals(stops[i])) return -5;
+            }
+        }
+
+        segments = new SegmentInventory(routeThrough(stops), layout.getSeatCount());
+        dirty = true;
+        return 0;
+    }
+
+    /**
+     * Returns the index in the route of the stop a ticket starts at. The origin of the voyage is stop 0.
+     *
+     * @param stop the stop name
+     * @return the stop index, or -1 if no segment of the route starts at that stop
+     * @see SegmentInventory#originIndex(String)
+     */
+    public synchronized int getOriginIndex(String stop) {
+        if (segments != null) return segments.originIndex(stop);
+        return from.equals(stop) ? 0 : -1;
+    }
+
+    /**
+     * Returns the index in the route of the stop a ticket ends at. The destination of the voyage is the last stop.
+     *
+     * @param stop the stop name
+     * @return the stop index, or -1 if no segment of the route ends at that stop
+     * @see SegmentInventory#destinationIndex(String)
+     */
+    public synchronized int getDestinationIndex(String stop) {
+        if (segments != null) return segments.destinationIndex(stop);
+        return to.equals(stop) ? 1 : -1;
+    }
+
+    /**
+     * Attempts to sell the seats in a buffer between two stops, all or nothing. A seat can be sold if it is not sold
+     * for the whole route and none of the segments between the stops is sold. Each seat costs its price times the
+     * share of the route's segments it is sold for.
+     *
+     * @param origin      the index of the origin stop, as returned by {@link #getOriginIndex(String)}
+     * @param destination the index of the destination stop, greater than {@code origin}
+     * @param seatNumbers the buffer holding the seat numbers to sell
+     * @param count       the number of seat numbers in the buffer
+     * @return the total price, or a negative value indicating specific errors, as for {@link #sellSeats(int[], int)};
+     * a seat listed twice counts as already sold
+     */
+    public synchronized double sellSegment(int origin, int destination, int[] seatNumbers, int count) {
+        if (cancelled) {
+            return -4.0;
+        }
+        if (segments == null) {
+            segments = new SegmentInventory(routeThrough(new String[0]), layout.getSeatCount());
+        }
+
+        long mask = SegmentInventory.mask(origin, destination);
+        double share = (double) (destination - origin) / segments.getSegmentCount();
+        BitSet listed = count > 32 ? new BitSet() : null;
+        double totalPrice = 0.0;
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            if (seatNumber <= 0) {
+                return -2.0;
+            }
+            if (!hasSeat(seatNumber)) {
+                return -3.0;
+            }
+            if (soldSeats.get(seatNumber - 1) || heldSeats.get(seatNumber - 1) || !segments.isFree(seatNumber, mask)
+                    || isListedBefore(seatNumbers, i, listed)) {
+                return -1.0;
+            }
+            totalPrice += getSeatPrice(seatNumber) * share;
+        }
+
+        for (int i = 0; i < count; i++) {
+            segments.sell(seatNumbers[i], mask);
+        }
+        segmentRevenue += totalPrice;
+        dirty = true;
+        return totalPrice;
+    }
+
+    /**
+     * Refunds the seats in a buffer between two stops, all or nothing. Every seat must be sold for all segments
+     * between the stops by {@link #sellSegment(int, int, int[], int)}; it may be sold for more, which stay sold.
+     * The refund cut of the voyage is kept as for {@link #refundSeats(int[], int)}.
+     *
+     * @param origin      the index of the origin stop, as returned by {@link #getOriginIndex(String)}
+     * @param destination the index of the destination stop, greater than {@code origin}
+     * @param seatNumbers the buffer holding the seat numbers to refund
+     * @param count       the number of seat numbers in the buffer
+     * @return the total refund amount, or a negative value indicating specific errors, as for
+     * {@link #refundSeats(int[], int)}
+     */
+    public synchronized double refundSegment(int origin, int destination, int[] seatNumbers, int count) {
+        if (cancelled) {
+            return -4.0;
+        }
+
+        long mask = SegmentInventory.mask(origin, destination);
+        BitSet listed = count > 32 ? new BitSet() : null;
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            if (seatNumber <= 0) {
+                return -2.0;
+            }
+            if (!hasSeat(seatNumber)) {
+                return -3.0;
+            }
+            if (segments == null || !segments.isSold(seatNumber, mask) || isListedBefore(seatNumbers, i, listed)) {
+                return -1.0;
+            }
+        }
+
+        double share = (double) (destination - origin) / segments.getSegmentCount();
+        double totalRefund = 0.0;
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            double fare = getSeatPrice(seatNumber) * share;
+            double refundAmount = fare * (1 - getRefundCut() / 100.0);
+            totalRefund += refundAmount;
+            totalCut += fare - refundAmount;
+            segmentRevenue -= fare;
+            segments.refund(seatNumber, mask);
+        }
+        dirty = true;
+        return totalRefund;
+    }
+
+    /**
+     * Returns the route of the voyage through the given stops, from its origin to its destination.
+     */
+    private String[] routeThrough(String[] stops) {
+        String[] route = new String[stops.length + 2];
+        route[0] = from;
+        System.arraycopy(stops, 0, route, 1, stops.length);
+        route[route.length - 1] = to;
+        return route;
+    }
+
+    /**
+     * Holds the seats in a buffer until a deadline, all or nothing. A seat can be held if it is free on the whole
+     * route and not held already.
+     *
+     * @param seatNumbers     the buffer holding the seat numbers to hold
+     * @param count           the number of seat numbers in the buffer
+     * @param expiresAtMillis the time in milliseconds at which the hold expires
+     * @return the ID of the new hold, or a negative value indicating specific errors, as for
+     * {@link #sellSeats(int[], int)}; a seat listed twice counts as already sold
+     */
+    public synchronized int holdSeats(int[] seatNumbers, int count, long expiresAtMillis) {
+        if (cancelled) {
+            return -4;
+        }
+
+        BitSet listed = count > 32 ? new BitSet() : null;
+        for (int i = 0; i < count; i++) {
+            int seatNumber = seatNumbers[i];
+            if (seatNumber <= 0) {
+                return -2;
+            }
+            if (!hasSeat(seatNumber)) {
+                return -3;
+            }
+            if (isTaken(seatNumber) || isListedBefore(seatNumbers, i, listed)) {
+                return -1;
+            }
+        }
+
+        SeatHold hold = new SeatHold(this, nextHoldId++, Arrays.copyOf(seatNumbers, count), expiresAtMillis);
+        for (int i = 0; i < count; i++) {
+            heldSeats.set(seatNumbers[i] - 1);
+        }
+        heldSeatCount += count;
+        if (holds == null) holds = new HashMap<>();
+        holds.put(hold.getId(), hold);
+        dirty = true;
+        return hold.getId();
+    }
+
+    /**
+     * Returns a pending hold.
+     *
+     * @param holdId the hold ID
+     * @return the hold, or {@code null} if there is no pending hold with that ID
+     */
+    public synchronized SeatHold getHold(int holdId) {
+        return holds == null ? null : holds.get(holdId);
+    }
+
+    /**
+     * Confirms a hold by selling its seats. A hold whose deadline has passed is released instead.
+     *
+     * @param holdId    the hold ID
+     * @param nowMillis the current time in milliseconds
+     * @return the total price of the seats, or a negative value indicating specific errors: -4 if the voyage was
+     * cancelled and -5 if there is no pending hold with that ID
+     */
+    public synchronized double confirmHold(int holdId, long nowMillis) {
+        if (cancelled) {
+            return -4.0;
+        }
+        SeatHold hold = releaseHold(holdId);
+        if (hold == null || hold.getExpiresAtMillis() <= nowMillis) {
+            return -5.0;
+        }
+        int[] seatNumbers = hold.getSeatNumbers();
+        return sellSeats(seatNumbers, seatNumbers.length); // Cannot fail: the seats were held until now
+    }
+
+    /**
+     * Releases a hold, freeing its seats.
+     *
+     * @param holdId the hold ID
+     * @return the released hold, or {@code null} if there is no pending hold with that ID
+     */
+    public synchronized SeatHold releaseHold(int holdId) {
+        SeatHold hold = holds == null ? null : holds.remove(holdId);
+        if (hold == null) return null;
+        for (int seatNumber : hold.getSeatNumbers()) {
+            heldSeats.clear(seatNumber - 1);
+        }
+        heldSeatCount -= hold.getSeatNumbers().length;
+        dirty = true;
+        return hold;
+    }
+
+    /**
+     * Returns whether a seat is sold or held, for any part of the route.
+     *
+     * @param seatNumber the number of an existing seat
+     * @return {@code true} if the seat cannot be sold for the whole route
+     */
+    private boolean isTaken(int seatNumber) {
+        return soldSeats.get(seatNumber - 1) || heldSeats.get(seatNumber - 1)
+                || (segments != null && segments.isPartlySold(seatNumber));
+    }
+
+    /**
+     * Returns whether a seat number in a buffer also appears earlier in it. Short lists are checked pairwise; for long
+     * ones the caller passes a bitmap, which records the seats seen so far.
+     *
+     * @param seatNumbers the buffer holding the seat numbers
+     * @param index       the index of the seat number to check; all before it were checked already
+     * @param listed      the seats seen so far, or {@code null} to check pairwise
+     * @return {@code true} if the seat number is listed before
+     */
+    private static boolean isListedBefore(int[] seatNumbers, int index, BitSet listed) {
+        int seatNumber = seatNumbers[index];
+        if (listed != null) {
+            if (listed.get(seatNumber - 1)) return true;
+            listed.set(seatNumber - 1);
+            return false;
+        }
+        for (int j = 0; j < index; j++) {
+            if (seatNumbers[j] == seatNumber) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the seats that are sold for the whole route or for any part of it, or held.
+     *
+     * @return the occupied seats, where bit n - 1 is set when seat number n is occupied; not to be changed
+     */
+    private BitSet occupiedSeats() {
+        boolean partlySold = segments != null && !segments.isEmpty();
+        if (!partlySold && heldSeats.isEmpty()) return soldSeats;
+        BitSet occupied = (BitSet) soldSeats.clone();
+        if (partlySold) occupied.or(segments.getPartlySold());
+        occupied.or(heldSeats);
+        return occupied;
+    }
+
+    /**
+     * Returns the first seat number in a buffer that is not positive. This is the seat a sale reports when it
+     * fails with -2, since every seat before it passed all checks.
+     *
+     * @param seatNumbers the buffer holding the seat numbers
+     * @param count       the number of seat numbers in the buffer
+     * @return the first seat number that is not positive, or 0 if there is none
+     */
+    static int firstNonPositive(int[] seatNumbers, int count) {
+        for (int i = 0; i < count; i++) {
+            if (seatNumbers[i] <= 0) return seatNumbers[i];
+        }
+        return 0;
+    }
+
+    private static int[] toArray(List<Integer> seatNumbers) {
+        int[] seatArray = new int[seatNumbers.size()];
+        for (int i = 0; i < seatArray.length; i++) {
+            seatArray[i] = seatNumbers.get(i);
+        }
+        return seatArray;
+    }
+
+    /**
+     * Returns the seat with the given number as a new {@code Seat} object holding its current state.
+     * Changing the returned object does not change the voyage.
+     *
+     * @param seatNumber the seat number
+     * @return the seat, or {@code null} if the voyage has no such seat
+     */
+    protected synchronized Seat getSeat(int seatNumber) {
+        if (!hasSeat(seatNumber)) return null;
+        Seat seat = new Seat(seatNumber, isPremiumSeat(seatNumber), getSeatPrice(seatNumber));
+        seat.setSold(soldSeats.get(seatNumber - 1));
+        return seat;
+    }
+
     /**
      * Generates a string representing detailed information about the voyage, including seat layout.
+     * A voyage with stops shows all of them in its route, and a seat sold for any part of the route, or held, as sold.
      *
      * @return detailed string of voyage information
      */
-    public String printDetails() {
+    public synchronized String printDetails() {
         StringBuilder details = new StringBuilder();
         details.append("Voyage ").append(this.id).append("\n")
-                .append(this.from).append("-").append(this.to).append("\n");
-
-        String busType = getBusType();
-        int seatsPerRow = busType.equals("Premium") ? 3 : 4; // Premium has 2+1 configuration, others have 2+2
-        if(busType.equals("Minibus")) seatsPerRow = 2; // Minibus has 2 seats per row without divider
-
-        StringBuilder seatingPlan = new StringBuilder();
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < seatsPerRow; j++) {
-                // Calculate seat number based on i, j, and seatsPerRow
-                int seatNumber = i * seatsPerRow + j + 1;
-                Seat seat = seats.stream().filter(s -> s.getSeatNumber() == seatNumber).findFirst().orElse(null);
-
-                if (seat != null) {
-                    seatingPlan.append(seat.isSold() ? "X" : "*");
-                    if (busType.equals("Premium") && j == 0) seatingPlan.append(" | ");// Add separator after the first seat for Premium
-
-                    else if (busType.equals("Standard") && j == 1 && seatsPerRow > 2) seatingPlan.append(" | "); // Add separator after the second seat for Standard
-                    else if (busType.equals("Premium") && j != seatsPerRow-1) seatingPlan.append(" ");// Add separator after the first seat for Premium
-                    else if(j!=seatsPerRow-1) seatingPlan.append(" ");
-                }
-            }
-            seatingPlan.append("\n");
-        }
-        details.append(seatingPlan);
+                .append(getRoute()).append("\n");
+
+        getSeatingPlan().render(occupiedSeats(), rows, details);
         return details.toString();
 
     }
 
+    /**
+     * Returns the details and revenue of the voyage as printed in reports. The text is cached and only rendered
+     * again after the voyage changes.
+     *
+     * @return the output of {@link #printDetails()} followed by that of {@link #printRevenue()}
+     */
+    public synchronized String getReportSection() {
+        if (dirty || reportSection == null) {
+            reportSection = printDetails() + printRevenue();
+            dirty = false;
+        }
+        return reportSection;
+    }
+
     /**
      * Computes and returns the total revenue for the voyage, including from sales and refunds.
+     * The prices of the sold seats are summed in seat order with a compensated sum, so the printed revenue is
+     * rounded from exactly the value of summing the seats one by one, which the running counts of
+     * {@link #calculateTotalRevenue()} may miss in the last bit.
      *
      * @return formatted string representing the total revenue
      */
-    public String printRevenue() {
-        return "Revenue: " + String.format("%.2f", calculateTotalRevenue()) + "\n";
+    public synchronized String printRevenue() {
+        double totalRevenue = soldSeats.stream().mapToDouble(i -> getSeatPrice(i + 1)).sum();
+        totalRevenue += totalCut;
+        totalRevenue += segmentRevenue;
+        return "Revenue: " + String.format("%.2f", totalRevenue) + "\n";
 
     }
 
     /**
      * Cancels the voyage, marking all seats as unsold and adjusting revenue as necessary.
+     * Later sales and refunds on this object fail as if the voyage did not exist.
      */
-    public void cancelVoyage() {
+    public synchronized void cancelVoyage() {
+        cancelled = true;
         // Mark all seats as unsold. Adjust revenue if necessary.
-        for (Seat seat : seats) {
-            seat.setSold(false);
-        }
+        soldSeats.clear();
+        soldRegularSeats = 0;
+        soldPremiumSeats = 0;
+        if (segments != null) segments.clear();
+        segmentRevenue = 0.0;
+        heldSeats.clear();
+        heldSeatCount = 0;
+        holds = null;
+        dirty = true;
+    }
+
+    /**
+     * Returns whether the voyage has been cancelled.
+     *
+     * @return {@code true} if the voyage has been cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
     }
 
     /**
@@ -203,26 +721,229 @@ public abstract class Voyage {
 
     /**
      * Calculates the total revenue accumulated from ticket sales and adjusted by any refund cuts.
-     * This method sums up the prices of all sold seats and adds any accumulated cuts from refunds,
-     * providing a complete overview of the financial outcome of the voyage.
+     * The revenue is computed in constant time from the running counts of sold regular and premium seats,
+     * plus the fares of seats sold for part of the route and the accumulated cuts from refunds. When the revenue check is enabled, it is also recomputed
+     * seat by seat and compared.
      *
-     * @return the total revenue of the voyage as a double value, formatted to two decimal places
+     * @return the total revenue of the voyage as a double value
+     * @throws IllegalStateException if the revenue check is enabled and the running counts are out of sync
+     * @see #setRevenueCheck(boolean)
      */
-    public double calculateTotalRevenue() {
-        double totalRevenue = 0.0;
-
-        // Sum the prices of all sold seats
-        totalRevenue += seats.stream()
-                .filter(Seat::isSold)   // Filter only the sold seats
-                .mapToDouble(Seat::getPrice)  // Get the price of each sold seat
-                .sum();  // Sum up all the prices
+    public synchronized double calculateTotalRevenue() {
+        double totalRevenue = soldRegularSeats * price + soldPremiumSeats * premiumPrice;
 
         // Include the total cut from refunds to adjust the total revenue
         totalRevenue += totalCut;
+        totalRevenue += segmentRevenue;
 
+        if (revenueCheck) {
+            checkRevenue(totalRevenue);
+        }
         return totalRevenue;
     }
 
+    /**
+     * Returns the number of sold seats.
+     *
+     * @return the sold seat count
+     */
+    public synchronized int getSoldSeatCount() {
+        return soldRegularSeats + soldPremiumSeats;
+    }
+
+    /**
+     * Returns the number of seats that can be sold for the whole route: those not sold, held or sold for part of it.
+     * The count is kept up to date by every sale, refund and hold, so this takes constant time.
+     *
+     * @return the free seat count, or 0 if the voyage was cancelled
+     */
+    public synchronized int getFreeSeatCount() {
+        if (cancelled) return 0;
+        int free = layout.getSeatCount() - getSoldSeatCount() - heldSeatCount;
+        return segments == null ? free : free - segments.getPartlySoldCount();
+    }
+
+    /**
+     * Returns the number of seats that can be sold between two stops. Beyond {@link #getFreeSeatCount()}, this
+     * only visits the seats sold for part of the route, and only for a part of the route.
+     *
+     * @param origin      the index of the origin stop, as returned by {@link #getOriginIndex(String)}
+     * @param destination the index of the destination stop, greater than {@code origin}
+     * @return the free seat count between the stops, or 0 if the voyage was cancelled
+     */
+    public synchronized int getFreeSeatCount(int origin, int destination) {
+        int free = getFreeSeatCount();
+        if (cancelled || segments == null || (origin == 0 && destination == segments.getSegmentCount())) {
+            return free;
+        }
+        return free + segments.countPartlySoldFree(SegmentInventory.mask(origin, destination));
+    }
+
+    /**
+     * Returns the stops of the route, from the starting point to the destination.
+     *
+     * @return the stops of the route
+     */
+    public synchronized String[] getRouteStops() {
+        return segments != null ? routeThrough(segments.getStops()) : new String[]{from, to};
+    }
+
+    /**
+     * Enables or disables the revenue check. When enabled, every revenue calculation also sums the prices of all
+     * sold seats and fails if the running counts disagree. The check can also be enabled with the system property
+     * {@code booking.checkRevenue}.
+     *
+     * @param enabled {@code true} to enable the check
+     */
+    public static void setRevenueCheck(boolean enabled) {
+        revenueCheck = enabled;
+    }
+
+    /**
+     * Recomputes the revenue seat by seat and compares it with the running value.
+     *
+     * @param runningRevenue the revenue computed from the running counts
+     * @throws IllegalStateException if the values disagree
+     */
+    private void checkRevenue(double runningRevenue) {
+        double recomputed = 0.0;
+        int sold = 0;
+        for (int i = soldSeats.nextSetBit(0); i >= 0; i = soldSeats.nextSetBit(i + 1)) {
+            recomputed += getSeatPrice(i + 1);
+            sold++;
+        }
+        if (segments != null) {
+            BitSet partlySold = segments.getPartlySold();
+            for (int i = partlySold.nextSetBit(0); i >= 0; i = partlySold.nextSetBit(i + 1)) {
+                recomputed += getSeatPrice(i + 1) * segments.getSoldSegmentCount(i + 1) / segments.getSegmentCount();
+            }
+        }
+        recomputed += totalCut;
+
+        // Sums of many seats may differ from the products in the last bits
+        double tolerance = 1e-9 * Math.max(1.0, Math.abs(recomputed));
+        if (sold != getSoldSeatCount() || Math.abs(recomputed - runningRevenue) > tolerance) {
+            throw new IllegalStateException(String.format("Revenue of voyage %d is out of sync: %d seats and %f TL" +
+                    " counted, %d seats and %f TL recomputed", id, getSoldSeatCount(), runningRevenue, sold, recomputed));
+        }
+    }
+
+    /**
+     * Adds a seat to, or removes it from, the running count of its class.
+     *
+     * @param seatNumber the seat number
+     * @param delta      1 when the seat is sold, -1 when it is refunded
+     */
+    private void countSeat(int seatNumber, int delta) {
+        if (isPremiumSeat(seatNumber)) {
+            soldPremiumSeats += delta;
+        } else {
+            soldRegularSeats += delta;
+        }
+    }
+
+    /**
+     * Restores the sold seats and refund cuts of the voyage from a snapshot.
+     *
+     * @param sold     the sold seats, where bit n - 1 is set when seat number n is sold
+     * @param totalCut the total cut kept from refunds
+     */
+    synchronized void restore(BitSet sold, double totalCut) {
+        for (int i = sold.nextSetBit(0); i >= 0 && i < layout.getSeatCount(); i = sold.nextSetBit(i + 1)) {
+            soldSeats.set(i);
+            countSeat(i + 1, 1);
+        }
+        this.totalCut = totalCut;
+        dirty = true;
+    }
+
+    /**
+     * Restores the seats sold for part of the route from a snapshot.
+     *
+     * @param stops          the intermediate stops, as returned by {@link #getStops()}
+     * @param soldSegments   the sold segments of every seat, as returned by {@link #getSoldSegments()}
+     * @param segmentRevenue the fares of the seats sold for part of the route
+     */
+    synchronized void restoreSegments(String[] stops, long[] soldSegments, double segmentRevenue) {
+        segments = new SegmentInventory(routeThrough(stops), layout.getSeatCount());
+        segments.restore(soldSegments);
+        this.segmentRevenue = segmentRevenue;
+        dirty = true;
+    }
+
+    /**
+     * Returns the intermediate stops of the voyage.
+     *
+     * @return the stops, empty if the route is a single segment, or {@code null} if no seat was ever sold for part
+     * of the route and no stops were added
+     */
+    synchronized String[] getStops() {
+        return segments == null ? null : segments.getStops();
+    }
+
+    /**
+     * Returns a copy of the sold segments of every seat, where element n - 1 is the bitmap of seat number n.
+     *
+     * @return the sold segments, or {@code null} if {@link #getStops()} is {@code null}
+     */
+    synchronized long[] getSoldSegments() {
+        return segments == null ? null : segments.getSoldSegments();
+    }
+
+    /**
+     * Gets the fares of the seats sold for part of the route.
+     *
+     * @return the segment revenue
+     */
+    synchronized double getSegmentRevenue() {
+        return segmentRevenue;
+    }
+
+    /**
+     * Returns a copy of the sold seats, where bit n - 1 is set when seat number n is sold.
+     *
+     * @return the sold seats
+     */
+    synchronized BitSet getSoldSeats() {
+        return (BitSet) soldSeats.clone();
+    }
+
+    /**
+     * Gets the total cut kept from refunds.
+     *
+     * @return the total refund cut
+     */
+    synchronized double getTotalCut() {
+        return totalCut;
+    }
+
+    /**
+     * Gets the unique identifier of the voyage.
+     *
+     * @return the voyage ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the number of seat rows of the voyage.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the base seat price the voyage was initialized with.
+     *
+     * @return the base price
+     */
+    public double getPrice() {
+        return price;
+    }
+
     /**
      * Gets the starting location of the voyage.
      *
@@ -232,6 +953,15 @@ public abstract class Voyage {
         return from;
     }
 
+    /**
+     * Returns the route of the voyage as its stops separated by {@code -}, from the starting point to the destination.
+     *
+     * @return the route
+     */
+    public synchronized String getRoute() {
+        return segments != null ? segments.getRoute() : from + "-" + to;
+    }
+
     /**
      * Gets the destination location of the voyage.
      *
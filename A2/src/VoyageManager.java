@@ -1,41 +1,237 @@
-import java.util.Arrays;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 /**
  * The {@code VoyageManager} class handles command processing and management of various voyages
  * within the booking system. It maintains a registry of all active voyages, processes commands related to
- * voyage initialization, ticket sales, refunds, and administrative reports, and logs interactions to a specified output file.
+ * voyage initialization, ticket sales, refunds, and administrative reports, and logs interactions to its output sink.
+ *
+ * <p>Commands may be processed from several threads at once. The registry is a sorted concurrent map, and every command that
+ * reads or changes a voyage does so under that voyage's lock, so commands on different voyages never block each other
+ * while a multi-seat sale or refund is applied all-or-nothing.
+ *
+ * <p>Every {@code VoyageManager} has voyages, holds, a journal and an output of its own, so several booking files can
+ * be processed in one JVM at once, each by its own manager, without seeing each other's voyages or output.
  */
 public class VoyageManager {
-    private static Map<Integer, Voyage> voyages = new HashMap<>();
+    private final Map<Integer, Voyage> voyages = new ConcurrentSkipListMap<>(); // Sorted by ID for the Z report
+    // The registered voyages with small IDs, so looking them up needs no boxed key; a cache of the registry
+    private final AtomicReferenceArray<Voyage> voyagesById = new AtomicReferenceArray<>(1 << 16);
+    private final RouteIndex routeIndex = new RouteIndex(); // The registered voyages by route, for searches
+
+    // Per-thread buffers reused by every command of every manager, so sales and refunds allocate nothing
+    private static final ThreadLocal<CommandDecoder> decoders = ThreadLocal.withInitial(CommandDecoder::new);
+    private static final ThreadLocal<StringBuilder> outputBuffers = ThreadLocal.withInitial(StringBuilder::new);
+    private static final int MAX_KEPT_BUFFER = 1 << 16; // Larger buffers, left by reports, are not kept
+
+    private final CommandMetrics metrics; // Latencies and errors of all commands, possibly shared with other managers
+    private static final String COMMAND_PREFIX = "COMMAND: ";
+
+    private final OutputSink output; // Destination of the command log; null to append to OUTPUT_FILE_PATH
+    private volatile BookingJournal journal; // Write-ahead journal of state changes; null when not durable
+
+    // Expiry of seat holds, guarded by holdLock; taken after a voyage's lock, never before
+    private final Object holdLock = new Object();
+    private static final long HOLD_TICK_MILLIS = 100;
+    private volatile Clock clock = Clock.systemUTC();
+    private TimingWheel<SeatHold> holdTimers = new TimingWheel<>(HOLD_TICK_MILLIS, clock.millis());
+    private volatile int pendingHolds; // Timers in the wheel, so commands can skip it when there are none
 
     public static final String OUTPUT_FILE_PATH = "output.txt";
+    public static final int DEFAULT_HOLD_SECONDS = 300;
+
+    /**
+     * Constructs a {@code VoyageManager} without voyages that appends its output to {@link #OUTPUT_FILE_PATH} with a
+     * separate write for every command.
+     */
+    public VoyageManager() {
+        this(null);
+    } // VoyageManager
+
+    /**
+     * Constructs a {@code VoyageManager} without voyages that writes its output to the given sink and keeps metrics
+     * of its own.
+     *
+     * @param output The sink to write to, or {@code null} to append to {@link #OUTPUT_FILE_PATH}.
+     */
+    public VoyageManager(OutputSink output) {
+        this(output, new CommandMetrics());
+    } // VoyageManager
+
+    /**
+     * Constructs a {@code VoyageManager} without voyages that writes its output to the given sink and records its
+     * commands in the given metrics, which may be shared with other managers.
+     *
+     * @param output  The sink to write to, or {@code null} to append to {@link #OUTPUT_FILE_PATH}.
+     * @param metrics The metrics to record commands in.
+     */
+    public VoyageManager(OutputSink output, CommandMetrics metrics) {
+        this.output = output;
+        this.metrics = metrics;
+    } // VoyageManager
+
+    /**
+     * Sets the clock seat holds are timed with. Must be called before any seat is held.
+     *
+     * @param newClock The clock.
+     */
+    public void setClock(Clock newClock) {
+        TimingWheel<SeatHold> timers = new TimingWheel<>(HOLD_TICK_MILLIS, newClock.millis());
+        synchronized (holdLock) {
+            clock = newClock;
+            holdTimers = timers;
+            pendingHolds = 0;
+        }
+    } // setClock
+
+    /**
+     * Recovers the voyages stored in a journal directory and journals every later state change there.
+     * Must be called before any command is processed.
+     *
+     * @param directory The journal directory.
+     * @throws IOException If the journal cannot be read or written.
+     * @see BookingJournal
+     */
+    public void openJournal(Path directory) throws IOException {
+        voyages.clear();
+        for (int i = 0; i < voyagesById.length(); i++) {
+            voyagesById.set(i, null);
+        }
+        routeIndex.clear();
+        journal = BookingJournal.open(directory, voyages);
+        for (Voyage voyage : voyages.values()) {
+            cache(voyage);
+            routeIndex.add(voyage);
+        }
+    } // openJournal
+
+    /**
+     * Forces every journaled state change to disk and closes the journal, if one is open.
+     *
+     * @throws IOException If the journal cannot be written.
+     */
+    public void closeJournal() throws IOException {
+        BookingJournal current = journal;
+        journal = null;
+        if (current != null) current.close();
+    } // closeJournal
 
     /**
      * Processes various commands for voyage management:
      * - INIT_VOYAGE: Initializes a new voyage with specified details, checking for duplicate or invalid entries.
+     * - INIT_VOYAGES: Initializes a number of voyages with consecutive IDs from one set of details.
      * - SELL_TICKET: Processes ticket sales for specific seats on a specific voyage, handling errors like sold-out or invalid seats.
+     * - SELL_BEST_SEATS: Sells the best available seats for a party sitting together, found by {@link BestSeatFinder}.
      * - REFUND_TICKET: Handles ticket refunds, ensuring the seats were previously sold and that the voyage allows refunds.
      * - PRINT_VOYAGE: Prints the details and revenue of a specified voyage to the output file.
      * - CANCEL_VOYAGE: Cancels a specified voyage, marking all seats as unsold and removing the voyage from the system.
      * - Z_REPORT: Generates a report of all voyages, detailing each one's status and revenue.
+     * - ADD_STOPS: Adds intermediate stops to a voyage, so that seats can be sold for part of its route.
+     * - SELL_SEGMENT: Sells seats between two stops of a voyage, leaving them free for the rest of the route.
+     * - REFUND_SEGMENT: Refunds seats sold between two stops of a voyage.
+     * - HOLD_TICKET: Holds seats of a voyage for a number of seconds, 300 by default, so no one else can buy them.
+     * - CONFIRM_TICKET: Sells the seats of a pending hold.
+     * - RELEASE_TICKET: Frees the seats of a pending hold.
+     * - SEARCH_VOYAGES: Lists the voyages between two places with at least a number of free seats, 1 by default.
      *
-     * Each command is logged to {@link #OUTPUT_FILE_PATH} along with any outputs or errors.
+     * Each command is logged to the output sink along with any outputs or errors.
+     * The output of a command is written in one piece, so outputs of concurrent commands do not interleave.
+     * The sink is flushed after every Z report. Holds that have expired are released before a command is processed.
+     * Once the journal, if one is open, can no longer be written, every command fails without changing anything.
      *
      * @param input The command string containing the command type and its parameters separated by tabs.
      */
-    public static void input(String input) {
+    public void input(String input) {
+        StringBuilder out = outputBuffers.get();
+        out.setLength(0);
+        try {
+            input(input, out);
+        } finally {
+            if (out.capacity() > MAX_KEPT_BUFFER) outputBuffers.remove();
+        }
+    } // input
+
+    /**
+     * Processes a single command like {@link #input(String)} and also leaves its log and output in the given builder.
+     *
+     * @param input The command string containing the command type and its parameters separated by tabs.
+     * @param out   The builder the command log and output are appended to.
+     */
+    public void input(String input, StringBuilder out) {
+        int start = out.length();
+        try {
+            process(input, out);
+        } finally {
+            // Whatever the command produced is logged, even if it failed half-way
+            writeOutput(start == 0 ? out : new StringBuilder(out.subSequence(start, out.length())),
+                    input.startsWith("Z_REPORT"));
+        }
+    } // input
+
+    /**
+     * Processes a single command and appends its log and output to the given builder without writing anything.
+     * This method is thread-safe.
+     *
+     * @param input The command string containing the command type and its parameters separated by tabs.
+     * @param out   The builder the command log and output are appended to.
+     */
+    public void process(String input, StringBuilder out) {
+        int resultStart = out.length() + COMMAND_PREFIX.length() + input.length() + 1;
+        int type = CommandMetrics.typeOf(input);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            BookingJournal current = journal;
+            if (current != null) current.checkWritable(); // Nothing may change once changes are no longer durable
+            if (pendingHolds > 0) expireHolds();
+            execute(input, out);
+            failed = false;
+        } finally {
+            metrics.record(type, System.nanoTime() - start, out, resultStart, failed);
+        }
+    } // process
+
+    /**
+     * Returns the latency histograms and error counters of all commands processed so far, including those of
+     * other managers sharing the metrics.
+     *
+     * @return The command metrics.
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    } // getMetrics
+
+    /**
+     * Processes a single command and appends its log and output to the given builder.
+     *
+     * @param input The command string containing the command type and its parameters separated by tabs.
+     * @param out   The builder the command log and output are appended to.
+     */
+    private void execute(String input, StringBuilder out) {
         int voyageId;
         Voyage voyage;
         List<Integer> seatNumbers;
 
-        String inputString = "COMMAND: " +
-                input;
-
-        FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, inputString, true, true);
+        out.append(COMMAND_PREFIX).append(input).append("\n");
+
+        CommandDecoder command = decoders.get();
+        command.reset(input);
+        // Sales and refunds, the bulk of all commands, are decoded in place without splitting the input
+        if (command.fieldEquals(0, "SELL_TICKET")) {
+            sellTicket(command, out);
+            return;
+        } else if (command.fieldEquals(0, "REFUND_TICKET")) {
+            refundTicket(command, out);
+            return;
+        }
 
         String[] temp = input.split("\t");
         String commandType = temp[0];
@@ -51,14 +247,14 @@ public class VoyageManager {
 
                 if (voyages.containsKey(ID)) {
                     init_voyage.append(String.format("ERROR: There is already a voyage with ID of %d!\n", ID));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                    out.append(init_voyage.toString());
                     break; // Exit the case block
                 }
 
                 if (ID<0){
                     init_voyage.append(String.format("ERROR: %d is not a positive integer, " +
                             "ID of a voyage must be a positive integer!\n",ID));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                    out.append(init_voyage.toString());
                     break;
                 }
 
@@ -68,7 +264,7 @@ public class VoyageManager {
                 if (rows<0){
                     init_voyage.append(String.format("ERROR: %d is not a positive integer, " +
                             "number of seat rows of a voyage must be a positive integer!\n",rows));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                    out.append(init_voyage.toString());
                     break;
                 }
 
@@ -76,7 +272,7 @@ public class VoyageManager {
                 if (price<0){
                     init_voyage.append(String.format("ERROR: %.0f is not a positive number, " +
                             "price must be a positive number!\n",price));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                    out.append(init_voyage.toString());
                     break;
                 }
 
@@ -88,15 +284,18 @@ public class VoyageManager {
                         if (refundCuts<0){
                             init_voyage.append(String.format("ERROR: %d is not an integer that is in range of [0, 100]," +
                                     " refund cut must be an integer that is in range of [0, 100]!\n",refundCuts));
-                            FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                            out.append(init_voyage.toString());
                             break;
                         }
-                        voyages.put(ID, new StandardBus(ID, from, to, rows, price, refundCuts));
+                        if (!register(new StandardBus(ID, from, to, rows, price, refundCuts))) {
+                            out.append(String.format("ERROR: There is already a voyage with ID of %d!\n", ID));
+                            break label;
+                        }
                         init_voyage.append(String.format("Voyage %d was initialized as a standard (2+2) voyage from %s to %s with %.2f TL" +
                                         " priced %d regular seats. Note that refunds will be %d%% less than the" +
                                         " paid amount.%n",
                                 ID, from, to, price, rows * 4, refundCuts));
-                        FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                        out.append(init_voyage.toString());
                         break label;
                     }
                     case "Premium": {
@@ -104,7 +303,7 @@ public class VoyageManager {
                         if (refundCuts<0){
                             init_voyage.append(String.format("ERROR: %d is not an integer that is in range of [0, 100]," +
                                     " refund cut must be an integer that is in range of [0, 100]!\n",refundCuts));
-                            FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                            out.append(init_voyage.toString());
                             break label;
                         }
 
@@ -112,136 +311,107 @@ public class VoyageManager {
                         if (premiumFee<0){
                             init_voyage.append(String.format("ERROR: %d is not a non-negative integer," +
                                     " premium fee must be a non-negative integer!\n",premiumFee));
-                            FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                            out.append(init_voyage.toString());
                             break label;
                         }
 
-                        voyages.put(ID, new PremiumBus(ID, from, to, rows, price, refundCuts, premiumFee));
+                        if (!register(new PremiumBus(ID, from, to, rows, price, refundCuts, premiumFee))) {
+                            out.append(String.format("ERROR: There is already a voyage with ID of %d!\n", ID));
+                            break label;
+                        }
                         init_voyage.append(String.format(
                                 "Voyage %d was initialized as a premium (1+2) voyage from %s to %s with %.2f TL " +
                                         "priced %d regular seats and %.2f TL priced %d premium seats. Note that " +
                                         "refunds will be %d%% less than the paid amount.%n",
                                 ID, from, to, price, rows * 2, price * (1 + premiumFee / 100.0), rows, refundCuts)); // Assuming 1+2 configuration
 
-                        FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                        out.append(init_voyage.toString());
                         break label;
                     }
                     case "Minibus":  // Minibus
-                        voyages.put(ID, new Minibus(ID, from, to, rows, price));
+                        if (!register(new Minibus(ID, from, to, rows, price))) {
+                            out.append(String.format("ERROR: There is already a voyage with ID of %d!\n", ID));
+                            break label;
+                        }
                         init_voyage.append(String.format(
                                 "Voyage %d was initialized as a minibus (2) voyage from %s to %s with %.2f TL " +
                                         "priced %d regular seats. Note that minibus tickets are not refundable.%n",
                                 ID, from, to, price, rows * 2)); // Assuming 2 seats per row
 
-                        FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                        out.append(init_voyage.toString());
                         break label;
 
                     default:
                         init_voyage.append("ERROR: Erroneous usage of \"INIT_VOYAGE\" command!\n");
-                        FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, init_voyage.toString(), true, false);
+                        out.append(init_voyage.toString());
                         break label;
                 }
 
 
             case "SELL_TICKET":
-                StringBuilder output = new StringBuilder();
+                sellTicket(command, out);
+                break;
 
-                voyageId = Integer.parseInt(temp[1]);
-                voyage = voyages.get(voyageId);
+            case "SELL_BEST_SEATS":
+                StringBuilder best = new StringBuilder();
 
-                if (temp.length<3) {
-                    String notFoundMsg = "ERROR: Erroneous usage of \"SELL_TICKET\" command!";
-                    // Use FileOutput to write the message to a file
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, notFoundMsg, true, true);
+                if (temp.length != 3) {
+                    out.append("ERROR: Erroneous usage of \"SELL_BEST_SEATS\" command!\n");
                     break;
                 }
 
-                if (!voyages.containsKey(voyageId)) {
-                    output.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, output.toString(), true, false);
-                    break; // Exit the case block
-                }
-
-                // Parse seat numbers from the command
-                seatNumbers = Arrays.stream(temp[2].split("_"))
-                        .map(Integer::parseInt)
-                        .collect(Collectors.toList());
-
-                Voyage.ticketSaleResult result = voyage.sellTickets(seatNumbers);
-
-                if (!result.isSuccess()) {
-                    output.append(result.errorMessage);
-                } else {
-                    // Generate the summary output
-                    String seatRange = seatNumbers.stream()
-                            .map(Object::toString)
-                            .collect(Collectors.joining("-"));
-                    output.append(String.format("Seat %s of the Voyage %d from %s to %s was successfully sold for %.2f TL.",
-                            seatRange, voyageId, voyage.getFrom(), voyage.getTo(), result.totalPrice));
-                }
-
-                // Write the output to the file
-                FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, output.toString(), true, true);
-                break;
-
-            case "REFUND_TICKET":
                 voyageId = Integer.parseInt(temp[1]);
                 voyage = voyages.get(voyageId);
+                int seatCount = Integer.parseInt(temp[2]);
 
-                StringBuilder refund = new StringBuilder();
-
-                if (temp.length<3) {
-                    String notFoundMsg = "ERROR: Erroneous usage of \"REFUND_TICKET\" command!";
-                    // Use FileOutput to write the message to a file
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, notFoundMsg, true, true);
+                if (voyage == null || voyage.isCancelled()) {
+                    best.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
+                    out.append(best.toString());
                     break;
                 }
 
-                if (!voyages.containsKey(voyageId)) {
-                    refund.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, refund.toString(), true, false);
-                    break; // Exit the case block
-                }
-
-                if (voyage.getBusType().equals("Minibus")) {
-                    String noRefundMsg = "ERROR: Minibus tickets are not refundable!";
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, noRefundMsg, true, true);
+                if (seatCount <= 0) {
+                    best.append(String.format("ERROR: %d is not a positive integer, " +
+                            "seat count must be a positive integer!\n", seatCount));
+                    out.append(best.toString());
                     break;
                 }
 
-                // Parse seat numbers for refund
-                seatNumbers = Arrays.stream(temp[2].split("_"))
-                        .map(Integer::parseInt)
-                        .collect(Collectors.toList());
-
+                // Find and sell under the voyage's lock, so the seats cannot be taken in between
+                Voyage.ticketSaleResult bestResult = null;
+                synchronized (voyage) {
+                    seatNumbers = voyage.findBestSeats(seatCount);
+                    if (!seatNumbers.isEmpty()) {
+                        bestResult = voyage.sellTickets(seatNumbers);
+                        BookingJournal bestJournal = journal;
+                        if (bestResult.isSuccess() && bestJournal != null) bestJournal.logSell(voyage, seatNumbers);
+                    }
+                }
 
-                double totalRefund = voyage.refundTickets(seatNumbers);
-                if (totalRefund == -1.0) {
-                    refund.append("ERROR: One or more seats are already empty!\n");
-                } else if (totalRefund == -2.0) {
-                    refund.append(String.format("ERROR: %d is not a positive integer, " +
-                            "seat number must be a positive integer!\n", seatNumbers.get(0)));
-                } else if (totalRefund == -3.0) {
-                    refund.append("ERROR: There is no such a seat!\n");
+                if (bestResult == null) {
+                    best.append(String.format("ERROR: There are no %d available seats together!", seatCount));
+                } else if (!bestResult.isSuccess()) {
+                    best.append(bestResult.errorMessage);
                 } else {
-                    // If refund is successful, generate output
                     String seatRange = seatNumbers.stream()
                             .map(Object::toString)
                             .collect(Collectors.joining("-"));
-                    refund.append(String.format("Seat %s of the Voyage %d from %s to %s was successfully refunded for %.2f TL.%n",
-                            seatRange, voyageId, voyage.getFrom(), voyage.getTo(), totalRefund));
-
+                    best.append(String.format("Seat %s of the Voyage %d from %s to %s was successfully sold for %.2f TL.",
+                            seatRange, voyageId, voyage.getFrom(), voyage.getTo(), bestResult.totalPrice));
                 }
-                FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, refund.toString(), true, false);
-                break;
 
+                out.append(best.toString()).append("\n");
+                break;
 
+            case "REFUND_TICKET":
+                refundTicket(command, out);
+                break;
 
             case "PRINT_VOYAGE":
                 if (temp.length != 2) {
                     String notFoundMsg = "ERROR: Erroneous usage of \"PRINT_VOYAGE\" command!";
-                    // Use FileOutput to write the message to a file
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, notFoundMsg, true, true);
+                    // Add the message to the command output
+                    out.append(notFoundMsg).append("\n");
                     break;
                 }
 
@@ -254,19 +424,18 @@ public class VoyageManager {
                 if (voyageId<0){
                     print_voyage.append(String.format("ERROR: %d is not a positive integer, " +
                             "ID of a voyage must be a positive integer!\n",voyageId));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, print_voyage.toString(), true, false);
+                    out.append(print_voyage.toString());
                     break;
                 }
 
-                if (!voyages.containsKey(voyageId)) {
+                if (voyage == null || voyage.isCancelled()) {
                     print_voyage.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, print_voyage.toString(), true, false);
+                    out.append(print_voyage.toString());
                     break; // Exit the case block
                 }
 
-                print_voyage.append(voyage.printDetails());
-                print_voyage.append(voyage.printRevenue());
-                FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, print_voyage.toString(), true, false);
+                print_voyage.append(voyage.getReportSection());
+                out.append(print_voyage.toString());
 
 
                 break;
@@ -274,8 +443,8 @@ public class VoyageManager {
             case "CANCEL_VOYAGE":
                 if (temp.length != 2) {
                     String notFoundMsg = "ERROR: Erroneous usage of \"CANCEL_VOYAGE\" command!";
-                    // Use FileOutput to write the message to a file
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, notFoundMsg, true, true);
+                    // Add the message to the command output
+                    out.append(notFoundMsg).append("\n");
                     break;
                 }
 
@@ -288,81 +457,726 @@ public class VoyageManager {
                 if (voyageIdToCancel<0){
                     cancelVoyage.append(String.format("ERROR: %d is not a positive integer, " +
                             "ID of a voyage must be a positive integer!\n",voyageIdToCancel));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, cancelVoyage.toString(), true, false);
+                    out.append(cancelVoyage.toString());
                     break;
                 }
 
-                if (!voyages.containsKey(voyageIdToCancel)) {
+                if (voyageToCancel == null) {
                     cancelVoyage.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageIdToCancel));
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, cancelVoyage.toString(), true, false);
+                    out.append(cancelVoyage.toString());
                     break; // Exit the case block
                 }
 
-                cancelVoyage.append(String.format("Voyage %s was successfully cancelled!\nVoyage details can be found below:\n", voyageIdToCancel));
+                // Report, cancel and remove under the voyage's lock so no sale or refund can slip in between
+                synchronized (voyageToCancel) {
+                    if (voyageToCancel.isCancelled()) {
+                        cancelVoyage.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageIdToCancel));
+                        out.append(cancelVoyage.toString());
+                        break;
+                    }
+
+                    cancelVoyage.append(String.format("Voyage %s was successfully cancelled!\nVoyage details can be found below:\n", voyageIdToCancel));
 
 
-                // Print the last state of the voyage
-                cancelVoyage.append(voyageToCancel.printDetails());
+                    // Print the last state of the voyage
+                    cancelVoyage.append(voyageToCancel.printDetails());
 
-                // Handle voyage cancellation (this method will reset the seats to unsold)
-                voyageToCancel.cancelVoyage();
+                    // Handle voyage cancellation (this method will reset the seats to unsold)
+                    voyageToCancel.cancelVoyage();
+                    BookingJournal cancelJournal = journal;
+                    if (cancelJournal != null) cancelJournal.logCancel(voyageToCancel);
 
-                cancelVoyage.append(voyageToCancel.printRevenue());
-                // Remove the voyage from the collection
-                voyages.remove(voyageIdToCancel);
-                FileOutput.writeToFile(OUTPUT_FILE_PATH, cancelVoyage.toString(), true, false);
+                    cancelVoyage.append(voyageToCancel.printRevenue());
+                    // Remove the voyage from the collection
+                    voyages.remove(voyageIdToCancel, voyageToCancel);
+                    routeIndex.remove(voyageToCancel);
+                    if (voyageIdToCancel < voyagesById.length()) {
+                        voyagesById.compareAndSet(voyageIdToCancel, voyageToCancel, null);
+                    }
+                }
+                out.append(cancelVoyage.toString());
+
+                break;
+
+            case "ADD_STOPS":
+                addStops(temp, out);
+                break;
+
+            case "SELL_SEGMENT":
+            case "REFUND_SEGMENT":
+                segmentTicket(temp, command, commandType.equals("REFUND_SEGMENT"), out);
+                break;
 
+            case "HOLD_TICKET":
+                holdTicket(temp, command, out);
+                break;
+
+            case "CONFIRM_TICKET":
+            case "RELEASE_TICKET":
+                endHold(temp, commandType.equals("CONFIRM_TICKET"), out);
+                break;
+
+            case "SEARCH_VOYAGES":
+                searchVoyages(temp, out);
+                break;
+
+            case "INIT_VOYAGES":
+                initVoyages(temp, out);
                 break;
 
             case "Z_REPORT":
                 if(temp.length>1){
                     String notFoundMsg = "ERROR: Erroneous usage of \"Z_REPORT\" command!";
-                    // Use FileOutput to write the message to a file
-                    FileOutput.writeToFile(VoyageManager.OUTPUT_FILE_PATH, notFoundMsg, true, true);
+                    // Add the message to the command output
+                    out.append(notFoundMsg).append("\n");
                     break;
 
                 }
-                printZReport();
+                appendZReport(out);
                 break;
 
 
             default:
                 String noCommandMsg = "ERROR: There is no command namely " + commandType+ "!\n";
-                FileOutput.writeToFile(OUTPUT_FILE_PATH, noCommandMsg, true, false);
+                out.append(noCommandMsg);
 
                 break;
         }
 
 
-    } // input
+    } // execute
+
+    /**
+     * Sells the seats of a SELL_TICKET command. The command is decoded in place and the result written through
+     * {@link BookingMessages}, so a sale allocates nothing.
+     *
+     * @param command The decoded command.
+     * @param out     The builder the output is appended to.
+     */
+    private void sellTicket(CommandDecoder command, StringBuilder out) {
+        int voyageId = command.intField(1);
+        Voyage voyage = lookup(voyageId);
+
+        if (command.fieldCount() < 3) {
+            out.append("ERROR: Erroneous usage of \"SELL_TICKET\" command!\n");
+            return;
+        }
+
+        if (voyage == null || voyage.isCancelled()) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+            return;
+        }
+
+        // Parse seat numbers from the command
+        command.parseSeats(2);
+        int[] seatNumbers = command.seats();
+        int count = command.seatCount();
+
+        double totalPrice;
+        synchronized (voyage) {
+            totalPrice = voyage.sellSeats(seatNumbers, count);
+            BookingJournal sellJournal = journal;
+            if (!(totalPrice < 0) && sellJournal != null) sellJournal.logSell(voyage, seatNumbers, count);
+        }
+
+        if (totalPrice == -4.0) {
+            // The voyage was cancelled by another command after it was looked up
+            BookingMessages.appendNoVoyage(out, voyageId);
+        } else if (totalPrice == -2.0) {
+            BookingMessages.appendNotPositive(out, Voyage.firstNonPositive(seatNumbers, count));
+        } else if (totalPrice == -3.0) {
+            out.append("ERROR: There is no such a seat!");
+        } else if (totalPrice == -1.0) {
+            out.append("ERROR: One or more seats already sold!");
+        } else {
+            BookingMessages.appendSold(out, seatNumbers, count, voyage, totalPrice);
+        }
+        out.append("\n");
+    } // sellTicket
+
+    /**
+     * Refunds the seats of a REFUND_TICKET command. The command is decoded in place and the result written through
+     * {@link BookingMessages}, so a refund allocates nothing.
+     *
+     * @param command The decoded command.
+     * @param out     The builder the output is appended to.
+     */
+    private void refundTicket(CommandDecoder command, StringBuilder out) {
+        int voyageId = command.intField(1);
+        Voyage voyage = lookup(voyageId);
+
+        if (command.fieldCount() < 3) {
+            out.append("ERROR: Erroneous usage of \"REFUND_TICKET\" command!\n");
+            return;
+        }
+
+        if (voyage == null || voyage.isCancelled()) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+            return;
+        }
+
+        if (voyage.getBusType().equals("Minibus")) {
+            out.append("ERROR: Minibus tickets are not refundable!\n");
+            return;
+        }
+
+        // Parse seat numbers for refund
+        command.parseSeats(2);
+        int[] seatNumbers = command.seats();
+        int count = command.seatCount();
+
+        double totalRefund;
+        synchronized (voyage) {
+            totalRefund = voyage.refundSeats(seatNumbers, count);
+            BookingJournal refundJournal = journal;
+            if (totalRefund >= 0 && refundJournal != null) refundJournal.logRefund(voyage, seatNumbers, count);
+        }
+
+        if (totalRefund == -4.0) {
+            // The voyage was cancelled by another command after it was looked up
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+        } else if (totalRefund == -1.0) {
+            out.append("ERROR: One or more seats are already empty!\n");
+        } else if (totalRefund == -2.0) {
+            // Reports the first listed seat, whichever one is not positive
+            BookingMessages.appendNotPositive(out, seatNumbers[0]);
+            out.append("\n");
+        } else if (totalRefund == -3.0) {
+            out.append("ERROR: There is no such a seat!\n");
+        } else {
+            BookingMessages.appendRefunded(out, seatNumbers, count, voyage, totalRefund);
+        }
+    } // refundTicket
+
+    /**
+     * Adds the stops of an ADD_STOPS command, which lists them separated by underscores.
+     *
+     * @param fields The fields of the command.
+     * @param out    The builder the output is appended to.
+     */
+    private void addStops(String[] fields, StringBuilder out) {
+        if (fields.length != 3) {
+            out.append("ERROR: Erroneous usage of \"ADD_STOPS\" command!\n");
+            return;
+        }
+
+        int voyageId = Integer.parseInt(fields[1]);
+        Voyage voyage = lookup(voyageId);
+        String[] stops = fields[2].split("_");
+        for (String stop : stops) {
+            if (stop.isEmpty()) {
+                out.append("ERROR: Erroneous usage of \"ADD_STOPS\" command!\n");
+                return;
+            }
+        }
+
+        if (voyage == null || voyage.isCancelled()) {
+            out.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
+            return;
+        }
+
+        int result;
+        synchronized (voyage) {
+            result = voyage.addStops(stops);
+            if (result == 0) routeIndex.add(voyage); // Indexes the new pairs of stops
+            BookingJournal stopsJournal = journal;
+            if (result == 0 && stopsJournal != null) stopsJournal.logStops(voyage, stops);
+        }
+
+        if (result == -4) {
+            out.append(String.format("ERROR: There is no voyage with ID of %d!\n", voyageId));
+        } else if (result == -1) {
+            out.append(String.format("ERROR: Voyage %d already has stops!\n", voyageId));
+        } else if (result == -2) {
+            out.append(String.format("ERROR: Stops cannot be added to Voyage %d after its seats are sold!\n",
+                    voyageId));
+        } else if (result == -3) {
+            out.append(String.format("ERROR: A voyage can have at most %d stops!\n",
+                    SegmentInventory.MAX_SEGMENTS - 1));
+        } else if (result == -5) {
+            out.append(String.format("ERROR: Stops of Voyage %d must differ from each other and from its starting" +
+                    " point and destination!\n", voyageId));
+        } else {
+            out.append(String.format("Stops were successfully added to the Voyage %d, its route is %s.\n",
+                    voyageId, voyage.getRoute()));
+        }
+    } // addStops
+
+    /**
+     * Sells or refunds the seats of a SELL_SEGMENT or REFUND_SEGMENT command, which gives the voyage ID, the stops
+     * the seats are sold from and to, and the seat numbers.
+     *
+     * @param fields  The fields of the command.
+     * @param command The decoded command, for the seat numbers.
+     * @param refund  True for REFUND_SEGMENT.
+     * @param out     The builder the output is appended to.
+     */
+    private void segmentTicket(String[] fields, CommandDecoder command, boolean refund, StringBuilder out) {
+        if (fields.length != 5) {
+            out.append(String.format("ERROR: Erroneous usage of \"%s\" command!\n", fields[0]));
+            return;
+        }
+
+        int voyageId = Integer.parseInt(fields[1]);
+        Voyage voyage = lookup(voyageId);
+        String from = fields[2];
+        String to = fields[3];
+
+        if (voyage == null || voyage.isCancelled()) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+            return;
+        }
+
+        if (refund && voyage.getBusType().equals("Minibus")) {
+            out.append("ERROR: Minibus tickets are not refundable!\n");
+            return;
+        }
+
+        int origin = voyage.getOriginIndex(from);
+        int destination = voyage.getDestinationIndex(to);
+        if (origin < 0 || destination <= origin) {
+            out.append(String.format("ERROR: Voyage %d does not go from %s to %s!\n", voyageId, from, to));
+            return;
+        }
+
+        command.parseSeats(4);
+        int[] seatNumbers = command.seats();
+        int count = command.seatCount();
+
+        double total;
+        synchronized (voyage) {
+            BookingJournal segmentJournal = journal;
+            if (refund) {
+                total = voyage.refundSegment(origin, destination, seatNumbers, count);
+                if (total >= 0 && segmentJournal != null) {
+                    segmentJournal.logSegmentRefund(voyage, origin, destination, seatNumbers, count);
+                }
+            } else {
+                total = voyage.sellSegment(origin, destination, seatNumbers, count);
+                if (!(total < 0) && segmentJournal != null) {
+                    segmentJournal.logSegmentSell(voyage, origin, destination, seatNumbers, count);
+                }
+            }
+        }
+
+        if (total == -4.0) {
+            // The voyage was cancelled by another command after it was looked up
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+        } else if (total == -2.0) {
+            BookingMessages.appendNotPositive(out, Voyage.firstNonPositive(seatNumbers, count));
+            out.append("\n");
+        } else if (total == -3.0) {
+            out.append("ERROR: There is no such a seat!\n");
+        } else if (total == -1.0) {
+            out.append(refund ? "ERROR: One or more seats are already empty!\n"
+                    : "ERROR: One or more seats already sold!\n");
+        } else if (refund) {
+            BookingMessages.appendRefunded(out, seatNumbers, count, voyageId, from, to, total);
+        } else {
+            BookingMessages.appendSold(out, seatNumbers, count, voyageId, from, to, total);
+            out.append("\n");
+        }
+    } // segmentTicket
+
+    /**
+     * Holds the seats of a HOLD_TICKET command, which gives the voyage ID, the seat numbers and optionally the number
+     * of seconds to hold them for.
+     *
+     * @param fields  The fields of the command.
+     * @param command The decoded command, for the seat numbers.
+     * @param out     The builder the output is appended to.
+     */
+    private void holdTicket(String[] fields, CommandDecoder command, StringBuilder out) {
+        if (fields.length != 3 && fields.length != 4) {
+            out.append("ERROR: Erroneous usage of \"HOLD_TICKET\" command!\n");
+            return;
+        }
+
+        int voyageId = Integer.parseInt(fields[1]);
+        Voyage voyage = lookup(voyageId);
+        int seconds = fields.length == 4 ? Integer.parseInt(fields[3]) : DEFAULT_HOLD_SECONDS;
+
+        if (voyage == null || voyage.isCancelled()) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+            return;
+        }
+
+        if (seconds <= 0) {
+            out.append(String.format("ERROR: %d is not a positive integer, hold time must be a positive integer!\n",
+                    seconds));
+            return;
+        }
+
+        command.parseSeats(2);
+        int[] seatNumbers = command.seats();
+        int count = command.seatCount();
+
+        int holdId;
+        synchronized (voyage) {
+            holdId = voyage.holdSeats(seatNumbers, count, clock.millis() + 1000L * seconds);
+            if (holdId > 0) {
+                SeatHold hold = voyage.getHold(holdId);
+                synchronized (holdLock) {
+                    hold.timer = holdTimers.schedule(hold, hold.getExpiresAtMillis());
+                    pendingHolds = holdTimers.size();
+                }
+            }
+        }
+
+        if (holdId == -4) {
+            // The voyage was cancelled by another command after it was looked up
+            BookingMessages.appendNoVoyage(out, voyageId);
+        } else if (holdId == -2) {
+            BookingMessages.appendNotPositive(out, Voyage.firstNonPositive(seatNumbers, count));
+        } else if (holdId == -3) {
+            out.append("ERROR: There is no such a seat!");
+        } else if (holdId == -1) {
+            out.append("ERROR: One or more seats already sold!");
+        } else {
+            out.append(String.format("Seat %s of the Voyage %d from %s to %s was successfully held for %d seconds" +
+                            " with the hold ID of %d.", joinSeats(seatNumbers, count), voyageId, voyage.getFrom(),
+                    voyage.getTo(), seconds, holdId));
+        }
+        out.append("\n");
+    } // holdTicket
+
+    /**
+     * Confirms or releases the hold of a CONFIRM_TICKET or RELEASE_TICKET command, which gives the voyage ID and
+     * the hold ID. Confirming sells the held seats.
+     *
+     * @param fields  The fields of the command.
+     * @param confirm True for CONFIRM_TICKET.
+     * @param out     The builder the output is appended to.
+     */
+    private void endHold(String[] fields, boolean confirm, StringBuilder out) {
+        if (fields.length != 3) {
+            out.append(String.format("ERROR: Erroneous usage of \"%s\" command!\n", fields[0]));
+            return;
+        }
+
+        int voyageId = Integer.parseInt(fields[1]);
+        Voyage voyage = lookup(voyageId);
+        int holdId = Integer.parseInt(fields[2]);
+
+        if (voyage == null || voyage.isCancelled()) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+            return;
+        }
+
+        SeatHold hold;
+        double totalPrice = 0.0;
+        synchronized (voyage) {
+            hold = voyage.getHold(holdId);
+            if (hold != null) {
+                if (confirm) {
+                    totalPrice = voyage.confirmHold(holdId, clock.millis());
+                    BookingJournal confirmJournal = journal;
+                    int[] seatNumbers = hold.getSeatNumbers();
+                    if (totalPrice >= 0 && confirmJournal != null) {
+                        confirmJournal.logSell(voyage, seatNumbers, seatNumbers.length);
+                    }
+                } else {
+                    voyage.releaseHold(holdId);
+                }
+                synchronized (holdLock) {
+                    holdTimers.cancel(hold.timer);
+                    pendingHolds = holdTimers.size();
+                }
+            }
+        }
+
+        int[] seatNumbers = hold == null ? null : hold.getSeatNumbers();
+        if (hold == null || totalPrice == -5.0) {
+            out.append(String.format("ERROR: There is no hold with ID of %d on the Voyage %d!\n", holdId, voyageId));
+        } else if (totalPrice == -4.0) {
+            BookingMessages.appendNoVoyage(out, voyageId);
+            out.append("\n");
+        } else if (confirm) {
+            BookingMessages.appendSold(out, seatNumbers, seatNumbers.length, voyage, totalPrice);
+            out.append("\n");
+        } else {
+            out.append(String.format("Seat %s of the Voyage %d from %s to %s was successfully released.\n",
+                    joinSeats(seatNumbers, seatNumbers.length), voyageId, voyage.getFrom(), voyage.getTo()));
+        }
+    } // endHold
 
     /**
-     * Prints a detailed Z report to the output file. The Z report lists the details and revenues of all voyages
-     * sorted by their IDs. If no voyages are available, it logs an appropriate message.
+     * Initializes the voyages of an INIT_VOYAGES command, which gives the bus type, the first ID, the number of
+     * voyages and then the details of INIT_VOYAGE. The details are checked once, and every voyage is created from
+     * them in one pass, sharing the seat layout, the places and the prices. IDs that are taken are reported and
+     * skipped.
+     *
+     * @param fields The fields of the command.
+     * @param out    The builder the output is appended to.
      */
-    public static void printZReport() {
-        StringBuilder zReport = new StringBuilder();
-        zReport.append("Z Report:\n");
-
-        if (voyages.isEmpty()) {
-            zReport.append("----------------\n");
-            zReport.append("No Voyages Available!\n");
-            zReport.append("----------------");
+    private void initVoyages(String[] fields, StringBuilder out) {
+        String type = fields.length > 1 ? fields[1] : "";
+        int expectedFields = type.equals("Standard") ? 9 : type.equals("Premium") ? 10 : type.equals("Minibus") ? 8 : -1;
+        if (fields.length != expectedFields) {
+            out.append("ERROR: Erroneous usage of \"INIT_VOYAGES\" command!\n");
+            return;
+        }
+
+        int firstId = Integer.parseInt(fields[2]);
+        int count = Integer.parseInt(fields[3]);
+        String from = fields[4];
+        String to = fields[5];
+        int rows = Integer.parseInt(fields[6]);
+        double price = Double.parseDouble(fields[7]);
+        int refundCut = expectedFields >= 9 ? Integer.parseInt(fields[8]) : 0;
+        int premiumFee = expectedFields == 10 ? Integer.parseInt(fields[9]) : 0;
+
+        if (firstId < 0) {
+            out.append(String.format("ERROR: %d is not a positive integer, " +
+                    "ID of a voyage must be a positive integer!\n", firstId));
+            return;
+        }
+        if (count <= 0) {
+            out.append(String.format("ERROR: %d is not a positive integer, " +
+                    "number of voyages must be a positive integer!\n", count));
+            return;
+        }
+        if ((long) firstId + count - 1 > Integer.MAX_VALUE) {
+            out.append("ERROR: Erroneous usage of \"INIT_VOYAGES\" command!\n");
+            return;
+        }
+        if (rows < 0) {
+            out.append(String.format("ERROR: %d is not a positive integer, " +
+                    "number of seat rows of a voyage must be a positive integer!\n", rows));
+            return;
+        }
+        if (price < 0) {
+            out.append(String.format("ERROR: %.0f is not a positive number, " +
+                    "price must be a positive number!\n", price));
+            return;
+        }
+        if (refundCut < 0 || refundCut > 100) {
+            out.append(String.format("ERROR: %d is not an integer that is in range of [0, 100]," +
+                    " refund cut must be an integer that is in range of [0, 100]!\n", refundCut));
+            return;
+        }
+        if (premiumFee < 0) {
+            out.append(String.format("ERROR: %d is not a non-negative integer," +
+                    " premium fee must be a non-negative integer!\n", premiumFee));
+            return;
+        }
+
+        IntFunction<Voyage> template;
+        if (type.equals("Standard")) {
+            template = voyageId -> new StandardBus(voyageId, from, to, rows, price, refundCut);
+        } else if (type.equals("Premium")) {
+            template = voyageId -> new PremiumBus(voyageId, from, to, rows, price, refundCut, premiumFee);
+        } else {
+            template = voyageId -> new Minibus(voyageId, from, to, rows, price);
+        }
+
+        int created = 0;
+        StringBuilder taken = new StringBuilder();
+        for (int voyageId = firstId; voyageId < firstId + count; voyageId++) {
+            if (register(template.apply(voyageId))) {
+                created++;
+            } else {
+                taken.append(String.format("ERROR: There is already a voyage with ID of %d!\n", voyageId));
+            }
+        }
+
+        out.append(taken);
+        if (created == 0) return;
+        String summary = String.format("%d voyages with IDs from %d to %d were initialized", created, firstId,
+                firstId + count - 1);
+        if (type.equals("Standard")) {
+            out.append(String.format("%s as standard (2+2) voyages from %s to %s with %.2f TL priced %d regular" +
+                    " seats each. Note that refunds will be %d%% less than the paid amount.%n",
+                    summary, from, to, price, rows * 4, refundCut));
+        } else if (type.equals("Premium")) {
+            out.append(String.format("%s as premium (1+2) voyages from %s to %s with %.2f TL priced %d regular" +
+                    " seats and %.2f TL priced %d premium seats each. Note that refunds will be %d%% less than the" +
+                    " paid amount.%n", summary, from, to, price, rows * 2, price * (1 + premiumFee / 100.0), rows,
+                    refundCut));
         } else {
-            zReport.append("----------------");
+            out.append(String.format("%s as minibus (2) voyages from %s to %s with %.2f TL priced %d regular" +
+                    " seats each. Note that minibus tickets are not refundable.%n", summary, from, to, price,
+                    rows * 2));
+        }
+    } // initVoyages
 
-            voyages.entrySet().stream()
-                    .sorted(Map.Entry.comparingByKey())
-                    .forEach(entry -> {
-                        Voyage voyage = entry.getValue();
-                        zReport.append("\n")
-                                .append(voyage.printDetails()) // Use the string returned by printDetails()
-                                .append(voyage.printRevenue())
-                                .append("----------------"); // Use the string returned by printRevenue()
-                    });
+    /**
+     * Lists the voyages of a SEARCH_VOYAGES command, which gives the place to travel from, the place to travel to and
+     * optionally the number of seats wanted. Only the voyages between the two places are looked at, through the
+     * route index, and their free seats are counted as they are kept, without looking at the seats.
+     *
+     * @param fields The fields of the command.
+     * @param out    The builder the output is appended to.
+     */
+    private void searchVoyages(String[] fields, StringBuilder out) {
+        if (fields.length != 3 && fields.length != 4) {
+            out.append("ERROR: Erroneous usage of \"SEARCH_VOYAGES\" command!\n");
+            return;
         }
 
-        FileOutput.writeToFile(OUTPUT_FILE_PATH, zReport.toString(), true, true);
+        String from = fields[1];
+        String to = fields[2];
+        int seatCount = fields.length == 4 ? Integer.parseInt(fields[3]) : 1;
+        if (seatCount <= 0) {
+            out.append(String.format("ERROR: %d is not a positive integer, " +
+                    "seat count must be a positive integer!\n", seatCount));
+            return;
+        }
 
+        int found = 0;
+        for (Voyage voyage : routeIndex.find(from, to)) {
+            int free;
+            synchronized (voyage) {
+                int origin = voyage.getOriginIndex(from);
+                int destination = voyage.getDestinationIndex(to);
+                if (voyage.isCancelled() || origin < 0 || destination <= origin) continue;
+                free = voyage.getFreeSeatCount(origin, destination);
+            }
+            if (free >= seatCount) {
+                out.append(String.format("Voyage %d from %s to %s has %d free seats.\n",
+                        voyage.getId(), from, to, free));
+                found++;
+            }
+        }
+        if (found == 0) {
+            out.append(String.format("There is no voyage from %s to %s with %d free seats!\n", from, to, seatCount));
+        }
+    } // searchVoyages
+
+    /**
+     * Releases every hold whose deadline has passed. The expired holds are taken from the timing wheel first and
+     * released afterwards, so the wheel's lock is never held while waiting for a voyage.
+     */
+    private void expireHolds() {
+        List<SeatHold> expired = new ArrayList<>();
+        synchronized (holdLock) {
+            holdTimers.advance(clock.millis(), expired::add);
+            pendingHolds = holdTimers.size();
+        }
+        for (SeatHold hold : expired) {
+            hold.getVoyage().releaseHold(hold.getId()); // Does nothing if the hold ended in the meantime
+        }
+    } // expireHolds
+
+    /**
+     * Joins seat numbers with dashes, as in "1-2-3".
+     *
+     * @param seatNumbers The buffer holding the seat numbers.
+     * @param count       The number of seat numbers in the buffer.
+     * @return The joined seat numbers.
+     */
+    private static String joinSeats(int[] seatNumbers, int count) {
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) joined.append('-');
+            joined.append(seatNumbers[i]);
+        }
+        return joined.toString();
+    } // joinSeats
+
+    /**
+     * Looks up a registered voyage by its ID.
+     *
+     * @param voyageId The voyage ID.
+     * @return The voyage, or null if there is none.
+     */
+    private Voyage lookup(int voyageId) {
+        if (voyageId >= 0 && voyageId < voyagesById.length()) {
+            Voyage voyage = voyagesById.get(voyageId);
+            if (voyage != null && !voyage.isCancelled()) return voyage;
+        }
+        return voyages.get(voyageId);
+    } // lookup
+
+    /**
+     * Adds a registered voyage to the lookup cache if its ID is small enough.
+     *
+     * @param voyage The registered voyage.
+     */
+    private void cache(Voyage voyage) {
+        int voyageId = voyage.getId();
+        if (voyageId >= 0 && voyageId < voyagesById.length()) voyagesById.set(voyageId, voyage);
+    } // cache
+
+    /**
+     * Adds a new voyage to the registry unless its ID is taken, and journals it. The voyage is locked until it is
+     * journaled, so no command on it can be journaled before its initialization.
+     *
+     * @param voyage The new voyage.
+     * @return True if the voyage was added, false if there is already a voyage with its ID.
+     */
+    private boolean register(Voyage voyage) {
+        synchronized (voyage) {
+            if (voyages.putIfAbsent(voyage.getId(), voyage) != null) return false;
+            cache(voyage);
+            routeIndex.add(voyage);
+            BookingJournal current = journal;
+            if (current != null) current.logInit(voyage);
+            return true;
+        }
+    } // register
+
+    /**
+     * Prints a detailed Z report to the output sink and flushes it. The Z report lists the details and revenues of
+     * all voyages sorted by their IDs. If no voyages are available, it logs an appropriate message.
+     */
+    public void printZReport() {
+        StringBuilder out = new StringBuilder();
+        appendZReport(out);
+        writeOutput(out, true);
     } // printZReport
+
+    /**
+     * Appends a Z report to the given builder. Voyages are visited in ID order straight from the sorted registry,
+     * and each contributes its cached report section, so only voyages changed since they were last reported are
+     * rendered again.
+     *
+     * @param out The builder the report is appended to.
+     */
+    private void appendZReport(StringBuilder out) {
+        out.append("Z Report:\n");
+        out.append("----------------");
+
+        boolean empty = true;
+        for (Voyage voyage : voyages.values()) {
+            out.append("\n")
+                    .append(voyage.getReportSection()) // Details and revenue, rendered under the voyage's lock
+                    .append("----------------");
+            empty = false;
+        }
+
+        if (empty) {
+            out.append("\n");
+            out.append("No Voyages Available!\n");
+            out.append("----------------");
+        }
+
+        out.append("\n");
+
+    } // appendZReport
+
+    /**
+     * Writes the output of one or more commands to the output sink in a single write.
+     *
+     * @param out   The output to write.
+     * @param flush True if the sink should be flushed after the write.
+     */
+    void writeOutput(CharSequence out, boolean flush) {
+        OutputSink sink = output;
+        if (sink != null) {
+            sink.write(out);
+            if (flush) sink.flush();
+        } else if (out.length() > 0) {
+            synchronized (VoyageManager.class) {
+                FileOutput.writeToFile(OUTPUT_FILE_PATH, out.toString(), true, false);
+            }
+        }
+    } // writeOutput
 } // class
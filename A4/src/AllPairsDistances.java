@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code AllPairsDistances} class computes the full distance matrix of a graph and stores it as a memory-mapped file.
+ * Sparse graphs are solved with one Dijkstra search per source point, run in parallel; dense graphs are solved with a
+ * blocked Floyd-Warshall whose blocks are processed in parallel. The matrix is a flat row-major {@code int[]} where
+ * unreachable pairs hold {@link ShortestPathSearch#UNREACHABLE}.
+ *
+ * <p>The matrix file starts with a 16-byte header of little-endian ints (magic, version, point count, reserved)
+ * followed by the matrix as little-endian ints, so other tools can map it directly.
+ * Point names are written to a text file next to it, one per line, in matrix order.
+ */
+public class AllPairsDistances {
+    private static final int FILE_MAGIC = 0x41505350; // "APSP"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int BLOCK_SIZE = 64;
+
+    /**
+     * The algorithm used to compute the matrix.
+     */
+    public enum Method {
+        PARALLEL_DIJKSTRA,
+        BLOCKED_FLOYD_WARSHALL
+    }
+
+    /**
+     * Chooses the algorithm by density: Floyd-Warshall costs n^3 regardless of the roads,
+     * while n Dijkstra searches cost about n*m*log n, so Floyd-Warshall only wins on dense graphs.
+     *
+     * @param graph the graph
+     * @return the method expected to be faster
+     */
+    public static Method chooseMethod(IndexedGraph graph) {
+        long n = graph.pointCount();
+        long logN = 64 - Long.numberOfLeadingZeros(Math.max(1, n));
+        return graph.arcCount() * logN >= n * n ? Method.BLOCKED_FLOYD_WARSHALL : Method.PARALLEL_DIJKSTRA;
+    }
+
+    /**
+     * Computes the distance matrix with the method chosen by {@link #chooseMethod}.
+     *
+     * @param graph the graph
+     * @return the row-major distance matrix of size n*n
+     */
+    public static int[] compute(IndexedGraph graph) {
+        return compute(graph, chooseMethod(graph));
+    }
+
+    /**
+     * Computes the distance matrix with the given method.
+     *
+     * @param graph  the graph
+     * @param method the method to use
+     * @return the row-major distance matrix of size n*n
+     * @throws IllegalArgumentException if the matrix would not fit in an array
+     */
+    public static int[] compute(IndexedGraph graph, Method method) {
+        int n = graph.pointCount();
+        if ((long) n * n > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many points for a distance matrix: " + n);
+        }
+        return method == Method.BLOCKED_FLOYD_WARSHALL ? floydWarshall(graph) : parallelDijkstra(graph);
+    }
+
+    /**
+     * Computes the matrix with one Dijkstra search per source. Each worker thread reuses its own search buffers.
+     */
+    private static int[] parallelDijkstra(IndexedGraph graph) {
+        int n = graph.pointCount();
+        int[] matrix = new int[n * n];
+        ThreadLocal<ShortestPathSearch> searches = ThreadLocal.withInitial(() -> new ShortestPathSearch(graph));
+        IntStream.range(0, n).parallel().forEach(source -> {
+            ShortestPathSearch search = searches.get();
+            search.search(source, -1, ShortestPathSearch.UNREACHABLE - 1);
+            int row = source * n;
+            for (int target = 0; target < n; target++) {
+                matrix[row + target] = search.isSettled(target) ? search.distance(target) : ShortestPathSearch.UNREACHABLE;
+            }
+        });
+        return matrix;
+    }
+
+    /**
+     * Computes the matrix with a blocked Floyd-Warshall. For each diagonal block, the block itself is relaxed first,
+     * then its row and column of blocks, then all remaining blocks; blocks within the last two phases run in parallel.
+     */
+    private static int[] floydWarshall(IndexedGraph graph) {
+        int n = graph.pointCount();
+        int[] matrix = new int[n * n];
+        Arrays.fill(matrix, ShortestPathSearch.UNREACHABLE);
+        for (int p = 0; p < n; p++) {
+            matrix[p * n + p] = 0;
+            for (int arc = graph.firstArc(p), end = graph.endArc(p); arc < end; arc++) {
+                int index = p * n + graph.arcTarget(arc);
+                matrix[index] = Math.min(matrix[index], graph.roadDistance(graph.arcRoad(arc)));
+            }
+        }
+
+        int blocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        for (int k = 0; k < blocks; k++) {
+            final int kb = k;
+            relaxBlock(matrix, n, kb, kb, kb);
+            IntStream.range(0, blocks).parallel().filter(b -> b != kb).forEach(b -> {
+                relaxBlock(matrix, n, kb, b, kb); // Blocks in the pivot row
+                relaxBlock(matrix, n, b, kb, kb); // Blocks in the pivot column
+            });
+            IntStream.range(0, blocks * blocks).parallel().forEach(ij -> {
+                int ib = ij / blocks;
+                int jb = ij % blocks;
+                if (ib != kb && jb != kb) relaxBlock(matrix, n, ib, jb, kb);
+            });
+        }
+        return matrix;
+    }
+
+    /**
+     * Relaxes block (ib, jb) through the intermediate points of block kb.
+     */
+    private static void relaxBlock(int[] matrix, int n, int ib, int jb, int kb) {
+        int iEnd = Math.min(n, (ib + 1) * BLOCK_SIZE);
+        int jEnd = Math.min(n, (jb + 1) * BLOCK_SIZE);
+        int kEnd = Math.min(n, (kb + 1) * BLOCK_SIZE);
+        for (int k = kb * BLOCK_SIZE; k < kEnd; k++) {
+            int kRow = k * n;
+            for (int i = ib * BLOCK_SIZE; i < iEnd; i++) {
+                int iRow = i * n;
+                int ik = matrix[iRow + k];
+                if (ik == ShortestPathSearch.UNREACHABLE) continue;
+                for (int j = jb * BLOCK_SIZE; j < jEnd; j++) {
+                    int kj = matrix[kRow + j];
+                    if (kj == ShortestPathSearch.UNREACHABLE) continue;
+                    long through = (long) ik + kj; // Kept only if below the current value, which is at most UNREACHABLE
+                    if (through < matrix[iRow + j]) matrix[iRow + j] = (int) through;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the distance matrix of a graph and writes it to a matrix file, with point names in {@code path + ".points"}.
+     *
+     * @param graph the graph
+     * @param path  the path of the matrix file
+     * @throws IOException if the files cannot be written
+     */
+    public static void writeMatrix(Graph graph, Path path) throws IOException {
+        IndexedGraph indexedGraph = graph.indexed();
+        writeMatrix(indexedGraph, compute(indexedGraph), path);
+    }
+
+    /**
+     * Writes a distance matrix to a memory-mapped matrix file, with point names in {@code path + ".points"}.
+     *
+     * @param graph  the graph the matrix belongs to
+     * @param matrix the row-major distance matrix
+     * @param path   the path of the matrix file
+     * @throws IOException if the files cannot be written
+     */
+    public static void writeMatrix(IndexedGraph graph, int[] matrix, Path path) throws IOException {
+        int n = graph.pointCount();
+        long size = HEADER_BYTES + 4L * matrix.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Distance matrix is too large to map: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(n).putInt(0);
+            buffer.asIntBuffer().put(matrix);
+            buffer.force();
+        }
+
+        List<String> names = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            names.add(graph.point(i).getName());
+        }
+        Files.write(Paths.get(path + ".points"), names);
+    }
+
+    /**
+     * Maps a matrix file written by {@link #writeMatrix} for reading. Entry (i, j) is at index i*n + j,
+     * where n is the square root of the buffer's capacity.
+     *
+     * @param path the path of the matrix file
+     * @return a read-only view of the matrix
+     * @throws IOException if the file cannot be read or is not a distance matrix file
+     */
+    public static IntBuffer openMatrix(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION) {
+                throw new IOException("Not a distance matrix file: " + path);
+            }
+            int n = buffer.getInt();
+            buffer.position(HEADER_BYTES);
+            IntBuffer matrix = buffer.asIntBuffer();
+            if ((long) matrix.capacity() != (long) n * n) {
+                throw new IOException("Truncated distance matrix file: " + path);
+            }
+            return matrix;
+        }
+    }
+}
@@ -1,3 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Comparator;
 import java.util.List;
 
@@ -22,31 +26,68 @@ public class Analyzer {
      * @param outputFile the path to the output file
      */
     public void loadAndAnalyze(String inputFile, String outputFile) {
-        String[] lines = FileInput.readFile(inputFile, true, true);
+        loadAndAnalyze(inputFile, outputFile, null);
+    }
+
+    /**
+     * Loads data from the input file, performs analysis, and writes the results to the output file. If an index
+     * file is given, the hub label index of the graph is also loaded from it, or built and saved to it if the file
+     * does not exist or was built from another input, and its size and build time are reported on the console.
+     *
+     * @param inputFile  the path to the input file
+     * @param outputFile the path to the output file
+     * @param indexFile  the path to the hub label index file of this input, or {@code null} for no index
+     */
+    public void loadAndAnalyze(String inputFile, String outputFile, Path indexFile) {
+        String header;
+        try {
+            // Roads are parsed in parallel chunks; each point keeps its roads in input order
+            header = new ParallelGraphLoader().load(Paths.get(inputFile), graph);
+        } catch (IOException e) {
+            e.printStackTrace();
+            header = null;
+        }
 
         // Check if reading the file was successful
-        if (lines == null) {
+        if (header == null) {
             System.err.println("Error reading the file.");
             return;
         }
 
-        String[] points = lines[0].split("\t");
+        String[] points = header.split("\t");
         Point start = new Point(points[0]);
         Point end = new Point(points[1]);
 
-        for (int i = 1; i < lines.length; i++) {
-            String[] data = lines[i].split("\t");
-            Point point1 = new Point(data[0]);
-            Point point2 = new Point(data[1]);
-            int distance = Integer.parseInt(data[2]);
-            int id = Integer.parseInt(data[3]);
+        analyzeAndOutput(start, end, outputFile);
 
-            graph.addPoint(point1);
-            graph.addPoint(point2);
-            graph.addRoad(new Road(point1, point2, distance, id));
+        if (indexFile != null) {
+            try {
+                System.out.println(loadOrBuildHubLabelIndex(indexFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.err.println("Error reading or writing the hub label index.");
+            }
         }
+    }
 
-        analyzeAndOutput(start, end, outputFile);
+    /**
+     * Loads the hub label index of the graph from a file, or builds it and saves it to the file if there is none.
+     * A file whose point count, road count or graph fingerprint differ from the graph's was built from another
+     * input, so the index is built again and the file overwritten. A loaded index reports the build time it was
+     * saved with.
+     *
+     * @param indexFile the path to the index file
+     * @return the hub label index
+     * @throws IOException if the index file cannot be read or written
+     */
+    public HubLabelIndex loadOrBuildHubLabelIndex(Path indexFile) throws IOException {
+        if (Files.exists(indexFile)) {
+            HubLabelIndex index = HubLabelIndex.load(indexFile, graph.indexed());
+            if (index != null) return index;
+        }
+        HubLabelIndex index = graph.buildHubLabelIndex();
+        index.save(indexFile);
+        return index;
     }
 
     /**
@@ -65,7 +106,7 @@ public class Analyzer {
         // Find the fastest route in the BCM
         List<Road> fastestRouteInBCM = graph.fastestRoute(start, end, barelyConnectedMap);
 
-        int totalDistanceOriginal = calculateTotalDistance(graph.getAllRoads())/2; // Divide by 2 to account for bidirectional roads
+        long totalDistanceOriginal = graph.getTotalDistance(); // Each road is counted once, in a single pass over the distance column
         int totalDistanceBCM = calculateTotalDistance(barelyConnectedMap);
 
         StringBuilder sb = new StringBuilder();
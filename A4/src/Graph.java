@@ -1,20 +1,30 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
  * The {@code Graph} class represents a graph structure with points and roads.
  * It provides methods to add points and roads, find the fastest route, construct a Barely Connected Map (BCM),
  * and retrieve all roads in the graph.
+ *
+ * <p>Roads are stored column-wise in a {@code RoadTable}; {@code Road} objects are only created as views for the results.
+ * Searches reuse their buffers between calls, so a {@code Graph} must not be searched from several threads at once.
  */
 public class Graph {
-    private final Map<Point, List<Road>> neighborsList;
-    private final Map<Point, List<Road>> originalNeighborsList;
+    private final List<Point> points;
+    private final Map<Point, Integer> pointIndices;
+    private final RoadTable roads;
+    private IndexedGraph indexedGraph; // Cached array-based snapshot, rebuilt after the graph changes
+    private ShortestPathSearch routeSearch; // Search buffers for the cached snapshot
+    private Map<Integer, Integer> roadNumbers; // Road ID to road number, built on first use
 
     /**
      * Constructs an empty {@code Graph}.
      */
     public Graph() {
-        neighborsList = new HashMap<>();
-        originalNeighborsList = new HashMap<>();
+        points = new ArrayList<>();
+        pointIndices = new HashMap<>();
+        roads = new RoadTable();
     }
 
     /**
@@ -23,20 +33,48 @@ public class Graph {
      * @param point the point to add
      */
     public void addPoint(Point point) {
-        neighborsList.putIfAbsent(point, new ArrayList<>());
-        originalNeighborsList.putIfAbsent(point, new ArrayList<>());
+        if (pointIndices.putIfAbsent(point, points.size()) == null) {
+            points.add(point);
+            invalidate();
+        }
     }
 
     /**
      * Adds a road to the graph, connecting two points.
      *
      * @param road the road to add
+     * @throws IllegalArgumentException if either point of the road has not been added
      */
     public void addRoad(Road road) {
-        neighborsList.get(road.getPoint1()).add(road);
-        neighborsList.get(road.getPoint2()).add(new Road(road.getPoint2(), road.getPoint1(), road.getDistance(), road.getId()));
-        // Always add road in both directions but maintain original for output reference
-        originalNeighborsList.get(road.getPoint1()).add(road);
+        Integer point1 = pointIndices.get(road.getPoint1());
+        Integer point2 = pointIndices.get(road.getPoint2());
+        if (point1 == null || point2 == null) {
+            throw new IllegalArgumentException("Both points must be added before the road: " + road);
+        }
+        // The road is stored once; the indexed graph walks it in both directions
+        roads.add(point1, point2, road.getDistance(), road.getId());
+        invalidate();
+    }
+
+    /**
+     * Loads points and roads that were already indexed into this empty graph.
+     *
+     * @param loadedPoints the points, indexed by point number
+     * @param loadedRoads  the roads, in input order
+     * @param indexed      the indexed graph built from the same points and roads
+     * @throws IllegalStateException if this graph already has points
+     */
+    void load(Point[] loadedPoints, RoadTable loadedRoads, IndexedGraph indexed) {
+        if (!points.isEmpty()) {
+            throw new IllegalStateException("Only an empty graph can be loaded");
+        }
+        for (Point point : loadedPoints) {
+            pointIndices.put(point, points.size());
+            points.add(point);
+        }
+        roads.addAll(loadedRoads);
+        invalidate();
+        indexedGraph = indexed;
     }
 
     /**
@@ -48,105 +86,97 @@ public class Graph {
      * @return the list of roads representing the fastest route
      */
     public List<Road> fastestRoute(Point start, Point end, List<Road> allowedRoads) {
-        Map<Point, List<Road>> restrictedNeighborsList;
+        IndexedGraph indexed = indexed();
+        ShortestPathSearch search = routeSearch();
+        List<Road> path = new ArrayList<>();
 
-        // Build the restricted graph if allowed roads are provided
+        // Restrict the search by banning every road except the allowed ones
+        search.clearBans();
         if (allowedRoads != null && !allowedRoads.isEmpty()) {
-            restrictedNeighborsList = buildRestrictedGraph(allowedRoads);// Use barely connected map's neighbor list
-        } else {
-            restrictedNeighborsList = new HashMap<>(neighborsList); // Use a copy of the main neighbor list
+            search.banAllRoads();
+            for (Road road : allowedRoads) {
+                Integer roadNumber = roadNumbers().get(road.getId());
+                if (roadNumber != null) search.unbanRoad(roadNumber);
+            }
         }
 
-        Map<Point, Integer> distances = new HashMap<>();
-        Map<Point, Point> predecessors = new HashMap<>();
-        PriorityQueue<PointDistance> priorityQueue = new PriorityQueue<>();
-        Set<Point> visited = new HashSet<>();
-
-        // Initialize distances to infinity, except for the start point
-        for (Point p : restrictedNeighborsList.keySet()) {
-            distances.put(p, Integer.MAX_VALUE);
+        int source = indexed.indexOf(start);
+        int target = indexed.indexOf(end);
+        if (source < 0 || target < 0) return path;
 
+        search.search(source, target, ShortestPathSearch.UNREACHABLE - 1);
+        for (int arc : search.pathArcs(target)) {
+            path.add(indexed.road(indexed.arcRoad(arc))); // Roads keep their original orientation for output
         }
-        distances.put(start, 0);
-        priorityQueue.add(new PointDistance(start, 0, -1));  // Initialize with an invalid ID
-
-        // Process the priority queue
-        while (!priorityQueue.isEmpty()) {
-            PointDistance pd = priorityQueue.poll();
-            Point current = pd.point;
-            // Stop if we reached the end point
-            if (current.equals(end)) break;
-
-            // Skip already visited points
-            if (!visited.add(current)) continue;
+        return path;
+    }
 
-            int currentDistance = distances.get(current);
-            for (Road road : restrictedNeighborsList.getOrDefault(current, Collections.emptyList())) {
-                Point neighbor = road.getPoint2();
-                int newDistance = currentDistance + road.getDistance();
-                // Update the distance if a shorter path is found
-                if (newDistance < distances.get(neighbor)) {
-                    distances.put(neighbor, newDistance);
-                    predecessors.put(neighbor, current);
-                    priorityQueue.add(new PointDistance(neighbor, newDistance, road.getId()));
-                }
-            }
-        }
+    /**
+     * Finds up to k alternative routes between two points, the first of which is the fastest route.
+     * Routes are loopless and returned in increasing order of total distance.
+     *
+     * @param start          the starting point
+     * @param end            the ending point
+     * @param k              the maximum number of routes to return
+     * @param maxDetourRatio the largest allowed ratio between a route's distance and the fastest route's distance,
+     *                       or {@link Double#POSITIVE_INFINITY} for no limit
+     * @return the routes, each as a list of roads in travel order
+     */
+    public List<List<Road>> alternativeRoutes(Point start, Point end, int k, double maxDetourRatio) {
+        return new KShortestPaths(indexed()).find(start, end, k, maxDetourRatio);
+    }
 
-        return constructNewPath(predecessors, start, end);
+    /**
+     * Builds a hub label index for fast point-to-point distance queries over the graph as it is now.
+     *
+     * @return the hub label index
+     */
+    public HubLabelIndex buildHubLabelIndex() {
+        return HubLabelIndex.build(indexed());
     }
 
     /**
-     * Builds a restricted graph using only the provided roads.
+     * Returns the array-based snapshot of the graph, building it if the graph changed since the last call.
      *
-     * @param roads the list of allowed roads
-     * @return the restricted graph as a neighbor list
+     * @return the indexed graph
      */
-    private Map<Point, List<Road>> buildRestrictedGraph(List<Road> roads) {
-        Map<Point, List<Road>> restrictedGraph = new HashMap<>();
-        for (Road road : roads) {
-            restrictedGraph.putIfAbsent(road.getPoint1(), new ArrayList<>());
-            restrictedGraph.putIfAbsent(road.getPoint2(), new ArrayList<>());
-            restrictedGraph.get(road.getPoint1()).add(road);
-            restrictedGraph.get(road.getPoint2()).add(new Road(road.getPoint2(), road.getPoint1(), road.getDistance(), road.getId()));  // Add reverse for undirected graph
+    IndexedGraph indexed() {
+        if (indexedGraph == null) {
+            indexedGraph = IndexedGraph.of(points.toArray(new Point[0]), roads);
         }
-        return restrictedGraph;
+        return indexedGraph;
     }
 
     /**
-     * Reconstructs the path from the predecessors map.
-     *
-     * @param predecessors the map of predecessors
-     * @param start        the starting point
-     * @param end          the ending point
-     * @return the list of roads representing the path
+     * Returns the search buffers for the current snapshot, creating them if the graph changed since the last call.
      */
-    private List<Road> constructNewPath(Map<Point, Point> predecessors, Point start, Point end) {
-        LinkedList<Road> path = new LinkedList<>();
-        Point current = end;
-        while (current != null && !current.equals(start)) {
-            Point previous = predecessors.get(current);
-            if (previous == null) break;
-            path.addFirst(findRoadBetweenTwoPoints(previous, current));
-            current = previous;
+    private ShortestPathSearch routeSearch() {
+        if (routeSearch == null) {
+            routeSearch = new ShortestPathSearch(indexed());
         }
-        return path;
+        return routeSearch;
     }
 
     /**
-     * Finds the road between two points.
-     *
-     * @param from the starting point
-     * @param to   the ending point
-     * @return the road connecting the two points
+     * Returns the map from road IDs to road numbers. If two roads share an ID, the first one added is used.
      */
-    private Road findRoadBetweenTwoPoints(Point from, Point to) {
-        for (Road road : neighborsList.get(from)) {
-            if (road.getPoint2().equals(to)) {
-                return findOriginalRoad(road.getId());
+    private Map<Integer, Integer> roadNumbers() {
+        if (roadNumbers == null) {
+            roadNumbers = new HashMap<>();
+            for (int r = 0; r < roads.size(); r++) {
+                roadNumbers.putIfAbsent(roads.id(r), r);
             }
         }
-        return null;
+        return roadNumbers;
+    }
+
+    /**
+     * Drops everything derived from the points and roads after the graph changes.
+     */
+    private void invalidate() {
+        indexedGraph = null;
+        routeSearch = null;
+        roadNumbers = null;
     }
 
     /**
@@ -156,112 +186,97 @@ public class Graph {
      */
     public List<Road> barelyConnectedMap() {
         List<Road> result = new ArrayList<>();
-        if (neighborsList.isEmpty()) return result;
+        IndexedGraph indexed = indexed();
+        int n = indexed.pointCount();
+        if (n == 0) return result;
 
         // Start from the point with the smallest name
-        Point start = Collections.min(neighborsList.keySet(), Comparator.comparing(Point::getName));
-        PriorityQueue<Road> pq = new PriorityQueue<>(Comparator.comparing(Road::getDistance).thenComparing(Road::getId));
-        Set<Point> includedPoints = new HashSet<>();
-        includedPoints.add(start);
-        enqueueConnectedRoads(start, pq, includedPoints);
+        int start = 0;
+        for (int p = 1; p < n; p++) {
+            if (indexed.point(p).getName().compareTo(indexed.point(start).getName()) < 0) start = p;
+        }
+        PriorityQueue<Integer> pq = new PriorityQueue<>((a, b) -> roads.distance(a) != roads.distance(b)
+                ? Integer.compare(roads.distance(a), roads.distance(b))
+                : Integer.compare(roads.id(a), roads.id(b)));
+        boolean[] includedPoints = new boolean[n];
+        includedPoints[start] = true;
+        int includedCount = 1;
+        enqueueConnectedRoads(indexed, start, pq, includedPoints);
 
-        while (!pq.isEmpty() && includedPoints.size() < neighborsList.size()) {
-            Road road = pq.poll();
-            Point nextPoint = includedPoints.contains(road.getPoint1()) ? road.getPoint2() : road.getPoint1();
-            if (includedPoints.contains(nextPoint)) continue;
+        while (!pq.isEmpty() && includedCount < n) {
+            int road = pq.poll();
+            int nextPoint = includedPoints[roads.point1(road)] ? roads.point2(road) : roads.point1(road);
+            if (includedPoints[nextPoint]) continue;
 
-            Road originalRoad = findOriginalRoad(road.getId());
-            if (originalRoad != null) {
-                result.add(originalRoad);
-                includedPoints.add(nextPoint);
-                enqueueConnectedRoads(nextPoint, pq, includedPoints);
-            }
+            result.add(indexed.road(road));
+            includedPoints[nextPoint] = true;
+            includedCount++;
+            enqueueConnectedRoads(indexed, nextPoint, pq, includedPoints);
         }
 
         return result;
     }
 
     /**
-     * Finds the original road by its ID to stick to the original road order.
+     * Enqueues all roads connected to a given point that are not yet included.
      *
-     * @param roadId the ID of the road
-     * @return the original road, or null if not found
+     * @param indexed        the indexed graph
+     * @param point          the point to process
+     * @param pq             the priority queue for road numbers
+     * @param includedPoints the flags of already included points
      */
-    private Road findOriginalRoad(int roadId) {
-        for (List<Road> roads : originalNeighborsList.values()) {
-            for (Road road : roads) {
-                if (road.getId() == roadId) {
-                    return road;
-                }
+    private void enqueueConnectedRoads(IndexedGraph indexed, int point, PriorityQueue<Integer> pq, boolean[] includedPoints) {
+        for (int arc = indexed.firstArc(point), end = indexed.endArc(point); arc < end; arc++) {
+            if (!includedPoints[indexed.arcTarget(arc)]) {
+                pq.add(indexed.arcRoad(arc));
             }
         }
-        return null;
     }
 
     /**
-     * Enqueues all roads connected to a given point that are not yet included.
+     * Returns a list of all roads in the graph, with every road once in each direction.
      *
-     * @param point         the point to process
-     * @param pq            the priority queue for roads
-     * @param includedPoints the set of already included points
+     * @return the list of all roads
      */
-    private void enqueueConnectedRoads(Point point, PriorityQueue<Road> pq, Set<Point> includedPoints) {
-        for (Road road : neighborsList.get(point)) {
-            if (!includedPoints.contains(road.getPoint2())) {
-                pq.add(road);
-            }
+    public List<Road> getAllRoads() {
+        List<Road> allRoads = new ArrayList<>(2 * roads.size());
+        for (int r = 0; r < roads.size(); r++) {
+            Point point1 = points.get(roads.point1(r));
+            Point point2 = points.get(roads.point2(r));
+            allRoads.add(new Road(point1, point2, roads.distance(r), roads.id(r)));
+            allRoads.add(new Road(point2, point1, roads.distance(r), roads.id(r)));
         }
+        return allRoads;
     }
 
     /**
-     * Returns a list of all roads in the graph.
+     * Returns the total distance of all roads, counting each road once.
      *
-     * @return the list of all roads
+     * @return the total distance
      */
-    public List<Road> getAllRoads() {
-        Set<Road> allRoads = new HashSet<>(); // Use set to avoid duplicates
-        for (List<Road> roads : neighborsList.values()) {
-            allRoads.addAll(roads);
-        }
-        return new ArrayList<>(allRoads);
+    public long getTotalDistance() {
+        return roads.totalDistance();
     }
 
     /**
-     * The {@code PointDistance} class is a helper class for managing points and their distances in the priority queue.
+     * Counts the roads in consecutive distance buckets of the given width.
+     *
+     * @param bucketWidth the width of every bucket
+     * @return the number of roads in each bucket
+     * @see RoadTable#distanceHistogram(int)
      */
-    private static class PointDistance implements Comparable<PointDistance> {
-        Point point;
-        int distance;
-        int roadId;  // Add road ID for tiebreak
-
-        /**
-         * Constructs a {@code PointDistance} with the specified point, distance, and road ID.
-         *
-         * @param point    the point
-         * @param distance the distance
-         * @param roadId   the road ID
-         */
-        public PointDistance(Point point, int distance, int roadId) {
-            this.point = point;
-            this.distance = distance;
-            this.roadId = roadId;
-        }
-
-        /**
-         * Compares this {@code PointDistance} with another for order.
-         * Comparison is based on distance first, then road ID.
-         *
-         * @param other the {@code PointDistance} to be compared
-         * @return a negative integer, zero, or a positive integer as this object is less than, equal to, or greater than the specified object
-         */
-        @Override
-        public int compareTo(PointDistance other) {
-            if (this.distance != other.distance) {
-                return Integer.compare(this.distance, other.distance);
-            } else {
-                return Integer.compare(this.roadId, other.roadId);  // Tiebreak on road ID
-            }
-        }
+    public int[] getDistanceHistogram(int bucketWidth) {
+        return roads.distanceHistogram(bucketWidth);
     }
 
+    /**
+     * Exports the road columns to a binary file, with point names in {@code path + ".points"}.
+     *
+     * @param path the path of the column file
+     * @throws IOException if the files cannot be written
+     * @see RoadTable#export(Path, Point[])
+     */
+    public void exportRoads(Path path) throws IOException {
+        roads.export(path, points.toArray(new Point[0]));
+    }
 }
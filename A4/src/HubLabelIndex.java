@@ -0,0 +1,365 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code HubLabelIndex} class answers point-to-point distance queries over a static graph using hub labels.
+ * Every point stores a short list of (hub, distance) pairs sorted by hub, built by pruned landmark labeling,
+ * and the distance between two points is the smallest sum over the hubs their labels share.
+ * All labels are kept in three flat arrays, and the index can be saved to and loaded from a binary file.
+ */
+public class HubLabelIndex {
+    private static final int FILE_MAGIC = 0x48554231; // "HUB1"
+
+    private final Point[] points;
+    private final Map<Point, Integer> pointIndices;
+    private final int[] labelOffsets; // Label of point p is in [labelOffsets[p], labelOffsets[p + 1])
+    private final int[] labelHubs;    // Hubs are ranks, sorted ascending within each label
+    private final int[] labelDistances;
+    private final int roadCount;  // Road count and fingerprint of the graph the index was built from
+    private final long graphHash;
+    private final long buildMillis;
+
+    /**
+     * Constructs a {@code HubLabelIndex} from its label arrays.
+     *
+     * @param points         the points, indexed by point number
+     * @param labelOffsets   the start of each point's label, with one extra entry holding the total label count
+     * @param labelHubs      the hub rank of each label entry
+     * @param labelDistances the distance of each label entry
+     * @param roadCount      the road count of the graph the index was built from
+     * @param graphHash      the {@link IndexedGraph#fingerprint()} of the graph the index was built from
+     * @param buildMillis    the time taken to build the index, in milliseconds
+     */
+    private HubLabelIndex(Point[] points, int[] labelOffsets, int[] labelHubs, int[] labelDistances, int roadCount,
+                          long graphHash, long buildMillis) {
+        this.points = points;
+        this.labelOffsets = labelOffsets;
+        this.labelHubs = labelHubs;
+        this.labelDistances = labelDistances;
+        this.roadCount = roadCount;
+        this.graphHash = graphHash;
+        this.buildMillis = buildMillis;
+        this.pointIndices = new HashMap<>();
+        for (int i = 0; i < points.length; i++) {
+            pointIndices.put(points[i], i);
+        }
+    }
+
+    /**
+     * Builds the index with pruned landmark labeling. Points are processed from the highest degree to the lowest;
+     * the search from each point stops at every point whose distance the labels built so far already cover.
+     *
+     * @param graph the graph to index
+     * @return the hub label index
+     */
+    public static HubLabelIndex build(IndexedGraph graph) {
+        long startTime = System.currentTimeMillis();
+        int n = graph.pointCount();
+
+        // Rank points by degree, highest first, so well-connected points become hubs early
+        Integer[] byDegree = new Integer[n];
+        for (int i = 0; i < n; i++) byDegree[i] = i;
+        Arrays.sort(byDegree, (a, b) -> {
+            int degreeA = graph.endArc(a) - graph.firstArc(a);
+            int degreeB = graph.endArc(b) - graph.firstArc(b);
+            return degreeA != degreeB ? Integer.compare(degreeB, degreeA) : Integer.compare(a, b);
+        });
+
+        int[][] hubs = new int[n][];
+        int[][] distances = new int[n][];
+        int[] sizes = new int[n];
+        for (int i = 0; i < n; i++) {
+            hubs[i] = new int[4];
+            distances[i] = new int[4];
+        }
+
+        int[] rootDistances = new int[n]; // Distances from the current root to its hubs, indexed by hub rank
+        Arrays.fill(rootDistances, ShortestPathSearch.UNREACHABLE);
+        int[] tentative = new int[n];
+        Arrays.fill(tentative, ShortestPathSearch.UNREACHABLE);
+        int[] touched = new int[n];
+        LongHeap heap = new LongHeap(n);
+
+        for (int rank = 0; rank < n; rank++) {
+            int root = byDegree[rank];
+            for (int i = 0; i < sizes[root]; i++) {
+                rootDistances[hubs[root][i]] = distances[root][i];
+            }
+
+            int touchedCount = 0;
+            tentative[root] = 0;
+            touched[touchedCount++] = root;
+            heap.push(0, root);
+            while (!heap.isEmpty()) {
+                long entry = heap.pop();
+                int distance = (int) (entry >>> 32);
+                int point = (int) entry;
+                if (distance > tentative[point]) continue; // Stale entry
+
+                // Prune if the labels built so far already give a distance at least as short
+                boolean covered = false;
+                for (int i = 0; i < sizes[point]; i++) {
+                    int hubDistance = rootDistances[hubs[point][i]];
+                    if (hubDistance != ShortestPathSearch.UNREACHABLE && (long) hubDistance + distances[point][i] <= distance) {
+                        covered = true;
+                        break;
+                    }
+                }
+                if (covered) continue;
+
+                if (sizes[point] == hubs[point].length) {
+                    hubs[point] = Arrays.copyOf(hubs[point], sizes[point] * 2);
+                    distances[point] = Arrays.copyOf(distances[point], sizes[point] * 2);
+                }
+                hubs[point][sizes[point]] = rank;
+                distances[point][sizes[point]] = distance;
+                sizes[point]++;
+
+                for (int arc = graph.firstArc(point), end = graph.endArc(point); arc < end; arc++) {
+                    int neighbor = graph.arcTarget(arc);
+                    long newDistance = (long) distance + graph.roadDistance(graph.arcRoad(arc));
+                    if (newDistance < tentative[neighbor]) {
+                        if (tentative[neighbor] == ShortestPathSearch.UNREACHABLE) touched[touchedCount++] = neighbor;
+                        tentative[neighbor] = (int) newDistance;
+                        heap.push((int) newDistance, neighbor);
+                    }
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                tentative[touched[i]] = ShortestPathSearch.UNREACHABLE;
+            }
+            for (int i = 0; i < sizes[root]; i++) {
+                rootDistances[hubs[root][i]] = ShortestPathSearch.UNREACHABLE;
+            }
+        }
+
+        // Pack the labels into flat arrays
+        int[] labelOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            labelOffsets[i + 1] = labelOffsets[i] + sizes[i];
+        }
+        int[] labelHubs = new int[labelOffsets[n]];
+        int[] labelDistances = new int[labelOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(hubs[i], 0, labelHubs, labelOffsets[i], sizes[i]);
+            System.arraycopy(distances[i], 0, labelDistances, labelOffsets[i], sizes[i]);
+        }
+
+        Point[] points = new Point[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = graph.point(i);
+        }
+        return new HubLabelIndex(points, labelOffsets, labelHubs, labelDistances, graph.roadCount(), graph.fingerprint(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Returns the distance of the shortest route between two points.
+     *
+     * @param from the first point
+     * @param to   the second point
+     * @return the distance, or {@link ShortestPathSearch#UNREACHABLE} if the points are not connected or not indexed
+     */
+    public int distance(Point from, Point to) {
+        Integer a = pointIndices.get(from);
+        Integer b = pointIndices.get(to);
+        if (a == null || b == null) return ShortestPathSearch.UNREACHABLE;
+        return distance(a, b);
+    }
+
+    /**
+     * Returns the distance of the shortest route between two points by merging their sorted labels.
+     *
+     * @param from the first point number
+     * @param to   the second point number
+     * @return the distance, or {@link ShortestPathSearch#UNREACHABLE} if the points are not connected
+     */
+    public int distance(int from, int to) {
+        if (from == to) return 0;
+        long best = ShortestPathSearch.UNREACHABLE;
+        int i = labelOffsets[from], iEnd = labelOffsets[from + 1];
+        int j = labelOffsets[to], jEnd = labelOffsets[to + 1];
+        while (i < iEnd && j < jEnd) {
+            int hubI = labelHubs[i];
+            int hubJ = labelHubs[j];
+            if (hubI == hubJ) {
+                // Only sums below UNREACHABLE are kept, so a sum beyond an int never reaches the cast
+                long through = (long) labelDistances[i] + labelDistances[j];
+                if (through < best) best = through;
+                i++;
+                j++;
+            } else if (hubI < hubJ) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (int) best;
+    }
+
+    /**
+     * Saves the index to a binary file. The header holds the point count, road count and fingerprint of the graph,
+     * so a loaded index can be checked against the graph it is used with.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(points.length);
+            out.writeInt(roadCount);
+            out.writeLong(graphHash);
+            out.writeInt(labelHubs.length);
+            out.writeLong(buildMillis);
+            for (Point point : points) {
+                out.writeUTF(point.getName());
+            }
+            for (int offset : labelOffsets) out.writeInt(offset);
+            for (int hub : labelHubs) out.writeInt(hub);
+            for (int distance : labelDistances) out.writeInt(distance);
+        }
+    }
+
+    /**
+     * Loads an index previously written by {@link #save(Path)}.
+     *
+     * @param path the path of the file
+     * @return the loaded index
+     * @throws IOException if the file cannot be read or is not a hub label index
+     */
+    public static HubLabelIndex load(Path path) throws IOException {
+        return load(path, null);
+    }
+
+    /**
+     * Loads an index previously written by {@link #save(Path)} if it was built from the given graph. Only the header
+     * is read when it was not.
+     *
+     * @param path  the path of the file
+     * @param graph the graph the index must have been built from, or {@code null} to accept any graph
+     * @return the loaded index, or {@code null} if its point count, road count or graph fingerprint differ
+     * @throws IOException if the file cannot be read or is not a hub label index
+     */
+    public static HubLabelIndex load(Path path, IndexedGraph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                throw new IOException("Not a hub label index: " + path);
+            }
+            int n = in.readInt();
+            int roadCount = in.readInt();
+            long graphHash = in.readLong();
+            if (graph != null && (n != graph.pointCount() || roadCount != graph.roadCount()
+                    || graphHash != graph.fingerprint())) {
+                return null;
+            }
+            int labelCount = in.readInt();
+            long buildMillis = in.readLong();
+            Point[] points = new Point[n];
+            for (int i = 0; i < n; i++) {
+                points[i] = new Point(in.readUTF());
+            }
+            int[] labelOffsets = new int[n + 1];
+            for (int i = 0; i <= n; i++) labelOffsets[i] = in.readInt();
+            int[] labelHubs = new int[labelCount];
+            for (int i = 0; i < labelCount; i++) labelHubs[i] = in.readInt();
+            int[] labelDistances = new int[labelCount];
+            for (int i = 0; i < labelCount; i++) labelDistances[i] = in.readInt();
+            return new HubLabelIndex(points, labelOffsets, labelHubs, labelDistances, roadCount, graphHash, buildMillis);
+        }
+    }
+
+    /**
+     * Returns the total number of (hub, distance) entries over all labels.
+     *
+     * @return the label entry count
+     */
+    public int labelCount() {
+        return labelHubs.length;
+    }
+
+    /**
+     * Returns the memory taken by the label arrays.
+     *
+     * @return the size of the label arrays in bytes
+     */
+    public long sizeInBytes() {
+        return 4L * (labelOffsets.length + labelHubs.length + labelDistances.length);
+    }
+
+    /**
+     * Returns the time it took to build the index.
+     *
+     * @return the build time in milliseconds
+     */
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Returns a one-line report of the index size and build time.
+     *
+     * @return the report
+     */
+    @Override
+    public String toString() {
+        double averageLabel = points.length == 0 ? 0.0 : (double) labelHubs.length / points.length;
+        return String.format("Hub label index: %d points, %d label entries (%.2f per point), %d bytes, built in %d ms",
+                points.length, labelHubs.length, averageLabel, sizeInBytes(), buildMillis);
+    }
+
+    /**
+     * The {@code LongHeap} class is a helper min-heap of (distance, point) pairs packed into longs,
+     * with the distance in the upper 32 bits so entries order by distance first.
+     */
+    private static class LongHeap {
+        private long[] entries;
+        private int size;
+
+        LongHeap(int capacity) {
+            entries = new long[Math.max(16, capacity)];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int distance, int point) {
+            if (size == entries.length) entries = Arrays.copyOf(entries, size * 2);
+            long entry = ((long) distance << 32) | point;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (entries[parent] <= entry) break;
+                entries[i] = entries[parent];
+                i = parent;
+            }
+            entries[i] = entry;
+        }
+
+        long pop() {
+            long top = entries[0];
+            long last = entries[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && entries[child + 1] < entries[child]) child++;
+                if (entries[child] >= last) break;
+                entries[i] = entries[child];
+                i = child;
+            }
+            if (size > 0) entries[i] = last;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The {@code IndexedGraph} class is a compact, array-based snapshot of a {@code Graph}.
+ * Points are numbered from 0 to n-1 and roads from 0 to m-1, with road attributes read from a {@code RoadTable}.
+ * The arcs of every point are stored as a contiguous slice of the arc arrays (compressed sparse row form), in the order
+ * the roads were added; a road adds an arc at its first point and then one at its second point.
+ * The searches and analyses of {@code Graph} run on this form.
+ */
+public class IndexedGraph {
+    private final Point[] points;
+    private final Map<Point, Integer> pointIndices;
+    private final RoadTable roads;
+    private final int roadCount; // Roads added to the table after this snapshot was taken are not part of it
+    private final int[] arcOffsets; // Arcs of point p are in [arcOffsets[p], arcOffsets[p + 1])
+    private final int[] arcTargets;
+    private final int[] arcRoads;
+
+    /**
+     * Constructs an {@code IndexedGraph} from already indexed arrays.
+     *
+     * @param points     the points, indexed by point number
+     * @param roads      the road table, indexed by road number
+     * @param arcOffsets the start of each point's arc slice, with one extra entry holding the total arc count
+     * @param arcTargets the target point of each arc
+     * @param arcRoads   the road number of each arc
+     */
+    IndexedGraph(Point[] points, RoadTable roads, int[] arcOffsets, int[] arcTargets, int[] arcRoads) {
+        this.points = points;
+        this.roads = roads;
+        this.roadCount = roads.size();
+        this.arcOffsets = arcOffsets;
+        this.arcTargets = arcTargets;
+        this.arcRoads = arcRoads;
+        this.pointIndices = new HashMap<>();
+        for (int i = 0; i < points.length; i++) {
+            pointIndices.put(points[i], i);
+        }
+    }
+
+    /**
+     * Builds an {@code IndexedGraph} from a road table with a counting sort of the arcs by point.
+     *
+     * @param points the points, indexed by point number
+     * @param roads  the road table
+     * @return the indexed snapshot of the graph
+     */
+    static IndexedGraph of(Point[] points, RoadTable roads) {
+        int n = points.length;
+        int m = roads.size();
+        int[] arcOffsets = new int[n + 1];
+        for (int r = 0; r < m; r++) {
+            arcOffsets[roads.point1(r) + 1]++;
+            arcOffsets[roads.point2(r) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            arcOffsets[i + 1] += arcOffsets[i];
+        }
+
+        int[] cursor = Arrays.copyOf(arcOffsets, n);
+        int[] arcTargets = new int[2 * m];
+        int[] arcRoads = new int[2 * m];
+        for (int r = 0; r < m; r++) {
+            int point1 = roads.point1(r);
+            int point2 = roads.point2(r);
+            arcTargets[cursor[point1]] = point2;
+            arcRoads[cursor[point1]++] = r;
+            arcTargets[cursor[point2]] = point1;
+            arcRoads[cursor[point2]++] = r;
+        }
+        return new IndexedGraph(points, roads, arcOffsets, arcTargets, arcRoads);
+    }
+
+    /**
+     * Returns the number of points in the graph.
+     *
+     * @return the point count
+     */
+    public int pointCount() {
+        return points.length;
+    }
+
+    /**
+     * Returns the number of roads in the graph. Each road is counted once regardless of direction.
+     *
+     * @return the road count
+     */
+    public int roadCount() {
+        return roadCount;
+    }
+
+    /**
+     * Returns the number of arcs in the graph, which is two per road.
+     *
+     * @return the arc count
+     */
+    public int arcCount() {
+        return arcTargets.length;
+    }
+
+    /**
+     * Returns the number of a point.
+     *
+     * @param point the point
+     * @return the point number, or -1 if the point is not in the graph
+     */
+    public int indexOf(Point point) {
+        Integer index = pointIndices.get(point);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the point with the given number.
+     *
+     * @param index the point number
+     * @return the point
+     */
+    public Point point(int index) {
+        return points[index];
+    }
+
+    /**
+     * Returns a view of the road with the given number in its original orientation.
+     *
+     * @param road the road number
+     * @return the road
+     */
+    public Road road(int road) {
+        return new Road(points[roads.point1(road)], points[roads.point2(road)], roads.distance(road), roads.id(road));
+    }
+
+    /**
+     * Returns the distance of the road with the given number.
+     *
+     * @param road the road number
+     * @return the distance
+     */
+    public int roadDistance(int road) {
+        return roads.distance(road);
+    }
+
+    /**
+     * Returns the identifier of the road with the given number.
+     *
+     * @param road the road number
+     * @return the road identifier
+     */
+    public int roadId(int road) {
+        return roads.id(road);
+    }
+
+    /**
+     * Returns the first arc of a point.
+     *
+     * @param point the point number
+     * @return the index of the point's first arc
+     */
+    public int firstArc(int point) {
+        return arcOffsets[point];
+    }
+
+    /**
+     * Returns the end of the arc slice of a point, exclusive.
+     *
+     * @param point the point number
+     * @return the index one past the point's last arc
+     */
+    public int endArc(int point) {
+        return arcOffsets[point + 1];
+    }
+
+    /**
+     * Returns the point an arc leads to.
+     *
+     * @param arc the arc index
+     * @return the target point number
+     */
+    public int arcTarget(int arc) {
+        return arcTargets[arc];
+    }
+
+    /**
+     * Returns the road an arc belongs to.
+     *
+     * @param arc the arc index
+     * @return the road number
+     */
+    public int arcRoad(int arc) {
+        return arcRoads[arc];
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the point names in point number order and of the endpoints, distance and
+     * identifier of every road in road number order. Snapshots with the same hash have, barring a collision, the
+     * same points with the same numbers and the same roads.
+     *
+     * @return the hash of the graph
+     */
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (Point point : points) {
+            hash = mix(hash, point.getName().hashCode());
+        }
+        for (int r = 0; r < roadCount; r++) {
+            hash = mix(hash, roads.point1(r));
+            hash = mix(hash, roads.point2(r));
+            hash = mix(hash, roads.distance(r));
+            hash = mix(hash, roads.id(r));
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+}
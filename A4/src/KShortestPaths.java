@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The {@code KShortestPaths} class finds the k shortest loopless routes between two points using Yen's algorithm.
+ * Every spur search runs on the same {@code ShortestPathSearch}, and the roads and points that a spur search must avoid
+ * are banned in place instead of building a restricted graph for each search.
+ *
+ * <p>An instance is not thread-safe; use one instance per thread.
+ */
+public class KShortestPaths {
+    private final IndexedGraph graph;
+    private final ShortestPathSearch search;
+
+    /**
+     * Constructs a {@code KShortestPaths} finder for the given graph.
+     *
+     * @param graph the graph to search
+     */
+    public KShortestPaths(IndexedGraph graph) {
+        this.graph = graph;
+        this.search = new ShortestPathSearch(graph);
+    }
+
+    /**
+     * Finds up to k loopless routes between two points in increasing order of total distance.
+     * The first route is the fastest route. Routes longer than the fastest route times the maximum detour ratio are not returned.
+     *
+     * @param start          the starting point
+     * @param end            the ending point
+     * @param k              the maximum number of routes to return
+     * @param maxDetourRatio the largest allowed ratio between a route's distance and the fastest route's distance,
+     *                       or {@link Double#POSITIVE_INFINITY} for no limit
+     * @return the routes, each as a list of roads in travel order; empty if the points are not connected
+     * @throws IllegalArgumentException if k is not positive or the detour ratio is less than 1
+     */
+    public List<List<Road>> find(Point start, Point end, int k, double maxDetourRatio) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be a positive integer: " + k);
+        }
+        if (!(maxDetourRatio >= 1.0)) {
+            throw new IllegalArgumentException("Maximum detour ratio must be at least 1: " + maxDetourRatio);
+        }
+
+        List<List<Road>> routes = new ArrayList<>();
+        int source = graph.indexOf(start);
+        int target = graph.indexOf(end);
+        if (source < 0 || target < 0 || source == target) return routes;
+
+        search.clearBans();
+        int shortest = search.search(source, target, ShortestPathSearch.UNREACHABLE - 1);
+        if (shortest == ShortestPathSearch.UNREACHABLE) return routes;
+
+        double bound = shortest * maxDetourRatio;
+        int limit = bound >= ShortestPathSearch.UNREACHABLE - 1 ? ShortestPathSearch.UNREACHABLE - 1 : (int) bound;
+
+        List<CandidatePath> accepted = new ArrayList<>();
+        PriorityQueue<CandidatePath> candidates = new PriorityQueue<>();
+        Set<CandidatePath> seen = new HashSet<>();
+        CandidatePath first = new CandidatePath(search.pathPoints(target), search.pathArcs(target), shortest, 0);
+        seen.add(first);
+        candidates.add(first);
+
+        while (!candidates.isEmpty() && accepted.size() < k) {
+            CandidatePath path = candidates.poll();
+            accepted.add(path);
+            if (accepted.size() == k) break;
+
+            int rootDistance = 0;
+            for (int i = 0; i < path.deviation; i++) {
+                rootDistance += graph.roadDistance(graph.arcRoad(path.arcs[i]));
+            }
+
+            // Only spur from the deviation point onwards; earlier spurs were already explored from the parent path
+            for (int i = path.deviation; i < path.arcs.length; i++) {
+                int spurPoint = path.points[i];
+
+                search.clearBans();
+                for (CandidatePath other : accepted) {
+                    if (other.arcs.length > i && sharesRoot(path, other, i)) {
+                        search.banRoad(graph.arcRoad(other.arcs[i]));
+                    }
+                }
+                for (int j = 0; j < i; j++) {
+                    search.banPoint(path.points[j]);
+                }
+
+                int spurDistance = search.search(spurPoint, target, limit - rootDistance);
+                if (spurDistance != ShortestPathSearch.UNREACHABLE) {
+                    CandidatePath candidate = join(path, i, search.pathPoints(target), search.pathArcs(target),
+                            rootDistance + spurDistance);
+                    if (seen.add(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+                rootDistance += graph.roadDistance(graph.arcRoad(path.arcs[i]));
+            }
+        }
+
+        for (CandidatePath path : accepted) {
+            List<Road> route = new ArrayList<>(path.arcs.length);
+            for (int arc : path.arcs) {
+                route.add(graph.road(graph.arcRoad(arc)));
+            }
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    /**
+     * Checks whether two paths take the same roads up to the point at the given position. Roads are compared rather
+     * than points, as two roads may join the same pair of points.
+     */
+    private static boolean sharesRoot(CandidatePath path, CandidatePath other, int spurIndex) {
+        for (int j = 0; j < spurIndex; j++) {
+            if (path.arcs[j] != other.arcs[j]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Joins the root of a path up to the spur point with a spur path that starts at the spur point.
+     */
+    private static CandidatePath join(CandidatePath root, int spurIndex, int[] spurPoints, int[] spurArcs, int distance) {
+        int[] points = Arrays.copyOf(root.points, spurIndex + spurPoints.length);
+        System.arraycopy(spurPoints, 0, points, spurIndex, spurPoints.length);
+        int[] arcs = Arrays.copyOf(root.arcs, spurIndex + spurArcs.length);
+        System.arraycopy(spurArcs, 0, arcs, spurIndex, spurArcs.length);
+        return new CandidatePath(points, arcs, distance, spurIndex);
+    }
+
+    /**
+     * The {@code CandidatePath} class is a helper class holding a route as point and arc arrays.
+     * Candidates are ordered by distance, then by number of roads, then by the arcs they use.
+     */
+    private static class CandidatePath implements Comparable<CandidatePath> {
+        final int[] points;
+        final int[] arcs;
+        final int distance;
+        final int deviation; // Index of the point where this path leaves the path it was derived from
+
+        CandidatePath(int[] points, int[] arcs, int distance, int deviation) {
+            this.points = points;
+            this.arcs = arcs;
+            this.distance = distance;
+            this.deviation = deviation;
+        }
+
+        @Override
+        public int compareTo(CandidatePath other) {
+            if (distance != other.distance) return Integer.compare(distance, other.distance);
+            if (arcs.length != other.arcs.length) return Integer.compare(arcs.length, other.arcs.length);
+            return Arrays.compare(arcs, other.arcs);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof CandidatePath)) return false;
+            return Arrays.equals(arcs, ((CandidatePath) obj).arcs);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(arcs);
+        }
+    }
+}
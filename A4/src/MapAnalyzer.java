@@ -1,3 +1,4 @@
+import java.nio.file.Paths;
 import java.util.Locale;
 /**
  * The {@code MapAnalyzer} class serves as the entry point to the program which analyzes geographic or network data from an input file and produces an analysis in an output file.
@@ -7,11 +8,14 @@ public class MapAnalyzer {
 
     /**
      * Main method which serves as the entry point for the program. It expects two command-line arguments:
-     * the first for the input file path and the second for the output file path.
+     * the first for the input file path and the second for the output file path. An optional third argument names
+     * the hub label index file of the input, which is built if it does not exist; the size and build time of the
+     * index are then printed.
      *
      * @param args the command line arguments where
-     *             args[0] should be the path to the input file and
-     *             args[1] should be the path to the output file.
+     *             args[0] should be the path to the input file,
+     *             args[1] should be the path to the output file and
+     *             args[2], if present, should be the path to the hub label index file.
      *             If the correct number of arguments is not provided, the usage information is printed.
      */
     public static void main(String[] args) {
@@ -19,7 +23,7 @@ public class MapAnalyzer {
 
         // Check if the correct number of arguments are passed
         if (args.length < 2) {
-            System.out.println("Usage: java MapAnalyzer <inputFile> <outputFile>");
+            System.out.println("Usage: java MapAnalyzer <inputFile> <outputFile> [indexFile]");
             return;
         }
 
@@ -27,6 +31,6 @@ public class MapAnalyzer {
         String outputFile = args[1];
 
         Analyzer analyzer = new Analyzer();
-        analyzer.loadAndAnalyze(inputFile, outputFile);
+        analyzer.loadAndAnalyze(inputFile, outputFile, args.length > 2 ? Paths.get(args[2]) : null);
     }
 }
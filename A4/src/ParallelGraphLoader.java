@@ -0,0 +1,313 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code ParallelGraphLoader} class builds a {@code Graph} from a road file using several threads.
+ * The file is split into chunks at line boundaries and every chunk is parsed concurrently into its own edge buffer,
+ * with point names numbered by a symbol table of its own. The chunks' symbols are then numbered again in chunk order,
+ * so every point gets the number of its first occurrence in the input, as when the roads are added one by one, and the
+ * buffers are merged into the adjacency arrays with a parallel, stable counting sort, so each point's roads keep the
+ * order of the input lines.
+ *
+ * <p>The first non-empty line of the file is the header (start and end points); every following non-empty line is a road
+ * in the form {@code point1<TAB>point2<TAB>distance<TAB>id}. Lines are trimmed like {@link FileInput#readFile}.
+ */
+public class ParallelGraphLoader {
+    private static final int MIN_CHUNK_BYTES = 1 << 16;
+
+    private final int parallelism;
+
+    /**
+     * Constructs a {@code ParallelGraphLoader} that uses the parallelism of the common fork-join pool.
+     */
+    public ParallelGraphLoader() {
+        this(ForkJoinPool.getCommonPoolParallelism() + 1);
+    }
+
+    /**
+     * Constructs a {@code ParallelGraphLoader} that splits the input into at most the given number of chunks.
+     *
+     * @param parallelism the maximum number of chunks parsed concurrently
+     */
+    public ParallelGraphLoader(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Loads the roads of a file into an empty graph.
+     *
+     * @param path  the path to the input file
+     * @param graph the empty graph to fill
+     * @return the trimmed header line, or {@code null} if the file has no non-empty lines
+     * @throws IOException if the file cannot be read
+     */
+    public String load(Path path, Graph graph) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+
+        // Find the header line; roads start on the line after it
+        int position = 0;
+        String header = null;
+        while (position < bytes.length && header == null) {
+            int lineEnd = lineEnd(bytes, position);
+            int start = trimStart(bytes, position, lineEnd);
+            int end = trimEnd(bytes, start, lineEnd);
+            if (start < end) header = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            position = lineEnd + 1;
+        }
+        if (header == null) return null;
+
+        // Split the remaining bytes into chunks that end on line boundaries
+        int chunkBytes = Math.max(MIN_CHUNK_BYTES, (bytes.length - position) / parallelism + 1);
+        List<int[]> bounds = new ArrayList<>();
+        while (position < bytes.length) {
+            int end = Math.min(bytes.length, position + chunkBytes);
+            end = end == bytes.length ? end : lineEnd(bytes, end) + 1;
+            bounds.add(new int[]{position, Math.min(end, bytes.length)});
+            position = end;
+        }
+
+        EdgeBuffer[] buffers = new EdgeBuffer[bounds.size()];
+        IntStream.range(0, buffers.length).parallel().forEach(c ->
+                buffers[c] = parseChunk(bytes, bounds.get(c)[0], bounds.get(c)[1]));
+
+        Point[] points = renumber(buffers);
+        int roadCount = 0;
+        for (EdgeBuffer buffer : buffers) roadCount += buffer.size;
+        RoadTable roads = new RoadTable(new int[roadCount], new int[roadCount], new int[roadCount], new int[roadCount], roadCount);
+        graph.load(points, roads, merge(points, roads, buffers));
+        return header;
+    }
+
+    /**
+     * Parses the road lines of one chunk into an edge buffer, numbering points by their first occurrence in the chunk.
+     */
+    private static EdgeBuffer parseChunk(byte[] bytes, int from, int to) {
+        EdgeBuffer buffer = new EdgeBuffer(Math.max(16, (to - from) / 16));
+        int position = from;
+        while (position < to) {
+            int lineEnd = Math.min(to, lineEnd(bytes, position));
+            int start = trimStart(bytes, position, lineEnd);
+            int end = trimEnd(bytes, start, lineEnd);
+            position = lineEnd + 1;
+            if (start == end) continue; // Empty lines are discarded
+
+            int tab1 = nextTab(bytes, start, end);
+            int tab2 = nextTab(bytes, tab1 + 1, end);
+            int tab3 = nextTab(bytes, tab2 + 1, end);
+            int tab4 = nextTab(bytes, tab3 + 1, end);
+            if (tab3 >= end) {
+                throw new IllegalArgumentException("Malformed road line: " + new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+            int point1 = buffer.intern(new String(bytes, start, tab1 - start, StandardCharsets.UTF_8));
+            int point2 = buffer.intern(new String(bytes, tab1 + 1, tab2 - tab1 - 1, StandardCharsets.UTF_8));
+            buffer.add(point1, point2, parseInt(bytes, tab2 + 1, tab3), parseInt(bytes, tab3 + 1, tab4));
+        }
+        return buffer;
+    }
+
+    /**
+     * Merges the edge buffers into the road table and an {@code IndexedGraph}. Arcs are ordered by point with a counting sort;
+     * each chunk scatters its arcs into a reserved range of every point's slice, so the order of the lines is kept.
+     */
+    private static IndexedGraph merge(Point[] points, RoadTable roads, EdgeBuffer[] buffers) {
+        int n = points.length;
+        int chunks = buffers.length;
+        int[] roadOffsets = new int[chunks + 1];
+        for (int c = 0; c < chunks; c++) {
+            roadOffsets[c + 1] = roadOffsets[c] + buffers[c].size;
+        }
+
+        // Count the arcs each chunk adds to each point: one for point1 and one for point2 of every road
+        int[][] cursors = new int[chunks][];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int[] counts = new int[n];
+            EdgeBuffer buffer = buffers[c];
+            for (int i = 0; i < buffer.size; i++) {
+                counts[buffer.point1[i]]++;
+                counts[buffer.point2[i]]++;
+            }
+            cursors[c] = counts;
+        });
+
+        int[] arcOffsets = new int[n + 1];
+        IntStream.range(0, n).parallel().forEach(p -> {
+            int degree = 0;
+            for (int c = 0; c < chunks; c++) degree += cursors[c][p];
+            arcOffsets[p + 1] = degree;
+        });
+        Arrays.parallelPrefix(arcOffsets, Integer::sum);
+
+        // Turn the counts into the first slot each chunk writes to in each point's slice
+        IntStream.range(0, n).parallel().forEach(p -> {
+            int cursor = arcOffsets[p];
+            for (int c = 0; c < chunks; c++) {
+                int count = cursors[c][p];
+                cursors[c][p] = cursor;
+                cursor += count;
+            }
+        });
+
+        int[] arcTargets = new int[arcOffsets[n]];
+        int[] arcRoads = new int[arcTargets.length];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int[] cursor = cursors[c];
+            EdgeBuffer buffer = buffers[c];
+            for (int i = 0; i < buffer.size; i++) {
+                int road = roadOffsets[c] + i;
+                int point1 = buffer.point1[i];
+                int point2 = buffer.point2[i];
+                roads.set(road, point1, point2, buffer.distance[i], buffer.id[i]);
+                int forward = cursor[point1]++;
+                arcTargets[forward] = point2;
+                arcRoads[forward] = road;
+                int reverse = cursor[point2]++;
+                arcTargets[reverse] = point1;
+                arcRoads[reverse] = road;
+            }
+        });
+        return new IndexedGraph(points, roads, arcOffsets, arcTargets, arcRoads);
+    }
+
+    /**
+     * Numbers the points of all chunks by their first occurrence in the input and rewrites every buffer's points to
+     * those numbers. The chunks' first-seen lists are visited in chunk order, so the numbers do not depend on which
+     * chunk was parsed first.
+     */
+    private static Point[] renumber(EdgeBuffer[] buffers) {
+        HashMap<String, Integer> symbols = new HashMap<>();
+        List<Point> points = new ArrayList<>();
+        int[][] symbolMaps = new int[buffers.length][];
+        for (int c = 0; c < buffers.length; c++) {
+            List<String> names = buffers[c].names;
+            int[] symbolMap = new int[names.size()];
+            for (int local = 0; local < symbolMap.length; local++) {
+                String name = names.get(local);
+                Integer symbol = symbols.get(name);
+                if (symbol == null) {
+                    symbol = points.size();
+                    symbols.put(name, symbol);
+                    points.add(new Point(name));
+                }
+                symbolMap[local] = symbol;
+            }
+            symbolMaps[c] = symbolMap;
+        }
+
+        IntStream.range(0, buffers.length).parallel().forEach(c -> {
+            int[] symbolMap = symbolMaps[c];
+            EdgeBuffer buffer = buffers[c];
+            for (int i = 0; i < buffer.size; i++) {
+                buffer.point1[i] = symbolMap[buffer.point1[i]];
+                buffer.point2[i] = symbolMap[buffer.point2[i]];
+            }
+        });
+        return points.toArray(new Point[0]);
+    }
+
+    /**
+     * Parses a decimal integer the way {@link Integer#parseInt(String)} does, without creating a string.
+     */
+    private static int parseInt(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == to) throw new NumberFormatException("For input string: \"" + new String(bytes, from, to - from, StandardCharsets.UTF_8) + "\"");
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("For input string: \"" + new String(bytes, from, to - from, StandardCharsets.UTF_8) + "\"");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("For input string: \"" + new String(bytes, from, to - from, StandardCharsets.UTF_8) + "\"");
+        }
+        return (int) value;
+    }
+
+    private static int lineEnd(byte[] bytes, int from) {
+        int i = from;
+        while (i < bytes.length && bytes[i] != '\n') i++;
+        return i;
+    }
+
+    private static int nextTab(byte[] bytes, int from, int end) {
+        int i = from;
+        while (i < end && bytes[i] != '\t') i++;
+        return i;
+    }
+
+    // Trimming matches String.trim(): every byte up to and including the space is whitespace
+    private static int trimStart(byte[] bytes, int from, int end) {
+        int i = from;
+        while (i < end && (bytes[i] & 0xFF) <= ' ') i++;
+        return i;
+    }
+
+    private static int trimEnd(byte[] bytes, int start, int end) {
+        int i = end;
+        while (i > start && (bytes[i - 1] & 0xFF) <= ' ') i--;
+        return i;
+    }
+
+    /**
+     * The {@code EdgeBuffer} class is a helper class collecting the roads of one chunk in growable primitive arrays,
+     * with the chunk's point names in the order they were first seen.
+     */
+    private static class EdgeBuffer {
+        int[] point1;
+        int[] point2;
+        int[] distance;
+        int[] id;
+        int size;
+        final HashMap<String, Integer> symbols = new HashMap<>();
+        final List<String> names = new ArrayList<>();
+
+        EdgeBuffer(int capacity) {
+            point1 = new int[capacity];
+            point2 = new int[capacity];
+            distance = new int[capacity];
+            id = new int[capacity];
+        }
+
+        /**
+         * Returns the chunk's number of a point name, assigning the next free number on first sight.
+         */
+        int intern(String name) {
+            Integer symbol = symbols.get(name);
+            if (symbol == null) {
+                symbol = names.size();
+                symbols.put(name, symbol);
+                names.add(name);
+            }
+            return symbol;
+        }
+
+        void add(int from, int to, int roadDistance, int roadId) {
+            if (size == point1.length) {
+                int capacity = size * 2;
+                point1 = Arrays.copyOf(point1, capacity);
+                point2 = Arrays.copyOf(point2, capacity);
+                distance = Arrays.copyOf(distance, capacity);
+                id = Arrays.copyOf(id, capacity);
+            }
+            point1[size] = from;
+            point2[size] = to;
+            distance[size] = roadDistance;
+            id[size] = roadId;
+            size++;
+        }
+    }
+}
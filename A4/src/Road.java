@@ -1,6 +1,7 @@
 /**
  * The {@code Road} class represents a road between two points in a graph.
  * It encapsulates the points it connects, the distance between them, and a unique identifier.
+ * {@code Graph} keeps its roads in a {@code RoadTable} and creates {@code Road} objects only as views for its results.
  */
 public class Road implements Comparable<Road> {
     private final Point point1;
@@ -0,0 +1,245 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@code RoadTable} class stores roads column-wise: the point numbers of both ends, the distance and the ID
+ * of every road are kept in separate primitive arrays indexed by road number.
+ * Roads are numbered in the order they are added, and each road is stored once in its original orientation.
+ *
+ * <p>The columns can be exported to a binary file that starts with a 16-byte header of little-endian ints
+ * (magic, version, road count, point count) followed by the point1, point2, distance and ID columns as
+ * little-endian ints. Point names are written to a text file next to it, one per line, in point number order.
+ */
+public class RoadTable {
+    private static final int FILE_MAGIC = 0x524F4144; // "ROAD"
+    private static final int FILE_VERSION = 1;
+
+    private int[] point1s;
+    private int[] point2s;
+    private int[] distances;
+    private int[] ids;
+    private int size;
+
+    /**
+     * Constructs an empty {@code RoadTable}.
+     */
+    public RoadTable() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty {@code RoadTable} with room for the given number of roads.
+     *
+     * @param capacity the initial capacity
+     */
+    public RoadTable(int capacity) {
+        point1s = new int[capacity];
+        point2s = new int[capacity];
+        distances = new int[capacity];
+        ids = new int[capacity];
+    }
+
+    /**
+     * Constructs a {@code RoadTable} that takes ownership of already filled columns.
+     *
+     * @param point1s   the first point of each road
+     * @param point2s   the second point of each road
+     * @param distances the distance of each road
+     * @param ids       the ID of each road
+     * @param size      the number of roads in the columns
+     */
+    RoadTable(int[] point1s, int[] point2s, int[] distances, int[] ids, int size) {
+        this.point1s = point1s;
+        this.point2s = point2s;
+        this.distances = distances;
+        this.ids = ids;
+        this.size = size;
+    }
+
+    /**
+     * Adds a road to the table.
+     *
+     * @param point1   the number of the first point
+     * @param point2   the number of the second point
+     * @param distance the distance of the road
+     * @param id       the ID of the road
+     * @return the road number
+     */
+    public int add(int point1, int point2, int distance, int id) {
+        if (size == point1s.length) {
+            int capacity = Math.max(16, size * 2);
+            point1s = Arrays.copyOf(point1s, capacity);
+            point2s = Arrays.copyOf(point2s, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            ids = Arrays.copyOf(ids, capacity);
+        }
+        point1s[size] = point1;
+        point2s[size] = point2;
+        distances[size] = distance;
+        ids[size] = id;
+        return size++;
+    }
+
+    /**
+     * Overwrites a road that is already in the table. Used to fill preallocated columns from several threads.
+     *
+     * @param road     the road number
+     * @param point1   the number of the first point
+     * @param point2   the number of the second point
+     * @param distance the distance of the road
+     * @param id       the ID of the road
+     */
+    void set(int road, int point1, int point2, int distance, int id) {
+        point1s[road] = point1;
+        point2s[road] = point2;
+        distances[road] = distance;
+        ids[road] = id;
+    }
+
+    /**
+     * Appends all roads of another table.
+     *
+     * @param other the table to copy the roads from
+     */
+    void addAll(RoadTable other) {
+        int newSize = size + other.size;
+        if (newSize > point1s.length) {
+            point1s = Arrays.copyOf(point1s, newSize);
+            point2s = Arrays.copyOf(point2s, newSize);
+            distances = Arrays.copyOf(distances, newSize);
+            ids = Arrays.copyOf(ids, newSize);
+        }
+        System.arraycopy(other.point1s, 0, point1s, size, other.size);
+        System.arraycopy(other.point2s, 0, point2s, size, other.size);
+        System.arraycopy(other.distances, 0, distances, size, other.size);
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        size = newSize;
+    }
+
+    /**
+     * Returns the number of roads in the table.
+     *
+     * @return the road count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the first point of a road.
+     *
+     * @param road the road number
+     * @return the point number
+     */
+    public int point1(int road) {
+        return point1s[road];
+    }
+
+    /**
+     * Returns the second point of a road.
+     *
+     * @param road the road number
+     * @return the point number
+     */
+    public int point2(int road) {
+        return point2s[road];
+    }
+
+    /**
+     * Returns the distance of a road.
+     *
+     * @param road the road number
+     * @return the distance
+     */
+    public int distance(int road) {
+        return distances[road];
+    }
+
+    /**
+     * Returns the ID of a road.
+     *
+     * @param road the road number
+     * @return the road ID
+     */
+    public int id(int road) {
+        return ids[road];
+    }
+
+    /**
+     * Returns the total distance of all roads, counting each road once.
+     *
+     * @return the total distance
+     */
+    public long totalDistance() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += distances[i];
+        }
+        return total;
+    }
+
+    /**
+     * Counts the roads in consecutive distance buckets: bucket i holds distances in [i * width, (i + 1) * width).
+     * Negative distances are counted in bucket 0.
+     *
+     * @param bucketWidth the width of every bucket
+     * @return the number of roads in each bucket, up to the bucket of the longest road
+     * @throws IllegalArgumentException if the bucket width is not positive
+     */
+    public int[] distanceHistogram(int bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width must be a positive integer: " + bucketWidth);
+        }
+        int max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, distances[i]);
+        }
+        int[] histogram = new int[max / bucketWidth + 1];
+        for (int i = 0; i < size; i++) {
+            histogram[Math.max(0, distances[i]) / bucketWidth]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Exports the columns to a binary file, with point names in {@code path + ".points"}.
+     *
+     * @param path   the path of the column file
+     * @param points the points, indexed by point number
+     * @throws IOException if the files cannot be written
+     */
+    public void export(Path path, Point[] points) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(size).putInt(points.length).flip();
+            writeFully(channel, header);
+            for (int[] column : new int[][]{point1s, point2s, distances, ids}) {
+                ByteBuffer buffer = ByteBuffer.allocate(4 * size).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asIntBuffer().put(column, 0, size);
+                writeFully(channel, buffer);
+            }
+        }
+
+        List<String> names = new ArrayList<>(points.length);
+        for (Point point : points) {
+            names.add(point.getName());
+        }
+        Files.write(Paths.get(path + ".points"), names);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+import java.util.Arrays;
+
+/**
+ * The {@code ShortestPathSearch} class runs Dijkstra's algorithm over an {@code IndexedGraph} with reusable buffers.
+ * Distances, predecessors and visited flags live in arrays that are reset lazily by a search stamp,
+ * so a search only pays for the part of the graph it actually reaches.
+ * Roads and points can be banned for a round of searches without building a restricted graph.
+ *
+ * <p>Ties are broken the same way as {@link Graph#fastestRoute}: by distance first, then by the ID of the road used.
+ * An instance is not thread-safe; use one instance per thread.
+ */
+public class ShortestPathSearch {
+    /**
+     * The distance reported for points that are not reachable.
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final IndexedGraph graph;
+    private final int[] distances;
+    private final int[] predecessorArcs;
+    private final int[] predecessorPoints;
+    private final int[] reachedStamps;
+    private final int[] settledStamps;
+    private final int[] bannedRoadStamps;
+    private final int[] bannedPointStamps;
+    private int searchStamp = 0;
+    private int banStamp = 1;
+    private int source = -1;
+
+    // Binary heap of (distance, road ID, point) entries kept in parallel arrays
+    private int[] heapPoints;
+    private int[] heapDistances;
+    private int[] heapRoadIds;
+    private int heapSize;
+
+    /**
+     * Constructs a {@code ShortestPathSearch} for the given graph.
+     *
+     * @param graph the graph to search
+     */
+    public ShortestPathSearch(IndexedGraph graph) {
+        this.graph = graph;
+        int n = graph.pointCount();
+        distances = new int[n];
+        predecessorArcs = new int[n];
+        predecessorPoints = new int[n];
+        reachedStamps = new int[n];
+        settledStamps = new int[n];
+        bannedPointStamps = new int[n];
+        bannedRoadStamps = new int[graph.roadCount()];
+        heapPoints = new int[Math.max(16, n)];
+        heapDistances = new int[heapPoints.length];
+        heapRoadIds = new int[heapPoints.length];
+    }
+
+    /**
+     * Lifts all bans placed by {@link #banRoad} and {@link #banPoint}.
+     */
+    public void clearBans() {
+        banStamp++;
+        if (banStamp == 0) { // The stamp wrapped around, so stale stamps could match again
+            Arrays.fill(bannedRoadStamps, 0);
+            Arrays.fill(bannedPointStamps, 0);
+            banStamp = 1;
+        }
+    }
+
+    /**
+     * Bans a road in both directions until the next {@link #clearBans()}.
+     *
+     * @param road the road number
+     */
+    public void banRoad(int road) {
+        bannedRoadStamps[road] = banStamp;
+    }
+
+    /**
+     * Bans every road until the next {@link #clearBans()}, so that only roads lifted with {@link #unbanRoad} can be used.
+     */
+    public void banAllRoads() {
+        Arrays.fill(bannedRoadStamps, banStamp);
+    }
+
+    /**
+     * Lifts the ban on a single road.
+     *
+     * @param road the road number
+     */
+    public void unbanRoad(int road) {
+        bannedRoadStamps[road] = 0;
+    }
+
+    /**
+     * Bans a point until the next {@link #clearBans()}. A banned point is never entered, but a search may start from it.
+     *
+     * @param point the point number
+     */
+    public void banPoint(int point) {
+        bannedPointStamps[point] = banStamp;
+    }
+
+    /**
+     * Runs a search from the source point. The search stops as soon as the target is reached,
+     * or once every remaining point is farther away than the limit.
+     *
+     * @param source the source point number
+     * @param target the target point number, or -1 to search the whole reachable graph
+     * @param limit  the largest distance of interest
+     * @return the distance to the target, or {@link #UNREACHABLE} if it cannot be reached within the limit
+     */
+    public int search(int source, int target, int limit) {
+        nextSearch();
+        this.source = source;
+        reach(source, 0, -1, -1);
+        heapSize = 0;
+        push(source, 0, -1); // Start with an invalid road ID
+
+        while (heapSize > 0) {
+            int current = heapPoints[0];
+            int currentDistance = heapDistances[0];
+            pop();
+            if (currentDistance > limit) break;
+            if (current == target) return currentDistance;
+            if (settledStamps[current] == searchStamp) continue;
+            settledStamps[current] = searchStamp;
+
+            for (int arc = graph.firstArc(current), end = graph.endArc(current); arc < end; arc++) {
+                int road = graph.arcRoad(arc);
+                int neighbor = graph.arcTarget(arc);
+                if (bannedRoadStamps[road] == banStamp || bannedPointStamps[neighbor] == banStamp) continue;
+
+                long newDistance = (long) currentDistance + graph.roadDistance(road);
+                if (newDistance < distance(neighbor)) {
+                    reach(neighbor, (int) newDistance, arc, current);
+                    push(neighbor, (int) newDistance, graph.roadId(road));
+                }
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    /**
+     * Returns the distance to a point found by the last search.
+     *
+     * @param point the point number
+     * @return the distance, or {@link #UNREACHABLE} if the last search did not reach the point
+     */
+    public int distance(int point) {
+        return reachedStamps[point] == searchStamp ? distances[point] : UNREACHABLE;
+    }
+
+    /**
+     * Returns whether the last search settled a point, meaning its distance is final.
+     *
+     * @param point the point number
+     * @return {@code true} if the distance of the point is final
+     */
+    public boolean isSettled(int point) {
+        return settledStamps[point] == searchStamp;
+    }
+
+    /**
+     * Reconstructs the arcs from the source of the last search to the given point.
+     *
+     * @param target the point number
+     * @return the arcs of the path in travel order, empty if the point was not reached
+     */
+    public int[] pathArcs(int target) {
+        if (reachedStamps[target] != searchStamp) return new int[0];
+        int length = 0;
+        for (int p = target; p != source; p = predecessorPoints[p]) {
+            length++;
+        }
+        int[] arcs = new int[length];
+        for (int p = target; p != source; p = predecessorPoints[p]) {
+            arcs[--length] = predecessorArcs[p];
+        }
+        return arcs;
+    }
+
+    /**
+     * Reconstructs the points from the source of the last search to the given point.
+     *
+     * @param target the point number
+     * @return the points of the path in travel order, including both ends; empty if the point was not reached
+     */
+    public int[] pathPoints(int target) {
+        if (reachedStamps[target] != searchStamp) return new int[0];
+        int length = 1;
+        for (int p = target; p != source; p = predecessorPoints[p]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int p = target; ; p = predecessorPoints[p]) {
+            path[--length] = p;
+            if (p == source) break;
+        }
+        return path;
+    }
+
+    /**
+     * Advances the search stamp, which invalidates every distance and flag of the previous search at once.
+     */
+    private void nextSearch() {
+        searchStamp++;
+        if (searchStamp == 0) { // The stamp wrapped around, so stale stamps could match again
+            Arrays.fill(reachedStamps, 0);
+            Arrays.fill(settledStamps, 0);
+            searchStamp = 1;
+        }
+    }
+
+    /**
+     * Records a new tentative distance for a point.
+     */
+    private void reach(int point, int distance, int arc, int predecessor) {
+        reachedStamps[point] = searchStamp;
+        distances[point] = distance;
+        predecessorArcs[point] = arc;
+        predecessorPoints[point] = predecessor;
+    }
+
+    /**
+     * Adds an entry to the heap.
+     */
+    private void push(int point, int distance, int roadId) {
+        if (heapSize == heapPoints.length) {
+            int capacity = heapSize * 2;
+            heapPoints = Arrays.copyOf(heapPoints, capacity);
+            heapDistances = Arrays.copyOf(heapDistances, capacity);
+            heapRoadIds = Arrays.copyOf(heapRoadIds, capacity);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(distance, roadId, heapDistances[parent], heapRoadIds[parent])) break;
+            move(parent, i);
+            i = parent;
+        }
+        heapPoints[i] = point;
+        heapDistances[i] = distance;
+        heapRoadIds[i] = roadId;
+    }
+
+    /**
+     * Removes the smallest entry from the heap.
+     */
+    private void pop() {
+        heapSize--;
+        if (heapSize == 0) return;
+        int point = heapPoints[heapSize];
+        int distance = heapDistances[heapSize];
+        int roadId = heapRoadIds[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && less(heapDistances[child + 1], heapRoadIds[child + 1], heapDistances[child], heapRoadIds[child])) {
+                child++;
+            }
+            if (!less(heapDistances[child], heapRoadIds[child], distance, roadId)) break;
+            move(child, i);
+            i = child;
+        }
+        heapPoints[i] = point;
+        heapDistances[i] = distance;
+        heapRoadIds[i] = roadId;
+    }
+
+    /**
+     * Copies a heap entry from one slot to another.
+     */
+    private void move(int from, int to) {
+        heapPoints[to] = heapPoints[from];
+        heapDistances[to] = heapDistances[from];
+        heapRoadIds[to] = heapRoadIds[from];
+    }
+
+    /**
+     * Orders heap entries by distance first, then by road ID.
+     */
+    private static boolean less(int distance1, int roadId1, int distance2, int roadId2) {
+        return distance1 != distance2 ? distance1 < distance2 : roadId1 < roadId2;
+    }
+}